@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+
+import com.heliosapm.benchmarks.json.JSONUnmarshalling.BufferType;
+import com.heliosapm.benchmarks.json.JSONUnmarshalling.Direction;
+
+/**
+ * <p>Title: VirtualThreadComparison</p>
+ * <p>Description: Runs the {@link Person} parse or serialize workload with a fixed number of requests in flight,
+ * each request on its own virtual thread, and again on a fixed pool of platform threads sized to the number of cores,
+ * and reports the throughput, latency percentiles and CPU of the threads doing the work for each.</p>
+ * <p>Each request optionally blocks for <code>loom.blockMillis</code> first, standing in for the downstream call
+ * a service makes while handling it. The pool holds a core for the whole block, so its throughput is bounded
+ * by <code>cores / block time</code>, while a blocked virtual thread releases its carrier. With no block the
+ * work is CPU bound and the comparison shows the cost of the virtual thread scheduling itself.</p>
+ * <p>Latency is measured from submission, so requests queued behind the pool count their queueing time.
+ * Requests still queued when the run ends are not run but recorded as waiting until then, and reported as expired.
+ * The scheduler CPU is the CPU time of the virtual thread carriers or of the pool threads.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.VirtualThreadComparison</code></p>
+ * <p>Usage: <b><code>VirtualThreadComparison [payload ...]</code></b> with the system properties
+ * <code>loom.concurrency</code> (comma separated, default 1000,10000,100000), <code>loom.blockMillis</code>
+ * (default 5), <code>loom.direction</code> (READ or WRITE), <code>loom.warmup</code> and <code>loom.seconds</code>.</p>
+ */
+
+public class VirtualThreadComparison {
+	/** The number of cores, which sizes the platform thread pool */
+	public static final int CORES = Runtime.getRuntime().availableProcessors();
+	/** The default payload */
+	public static final String DEFAULT_PAYLOAD = "sample-1kb.json.gz";
+	/** The default concurrency levels */
+	public static final String DEFAULT_CONCURRENCY = "1000,10000,100000";
+	/** The default simulated blocking time per request in ms */
+	public static final int DEFAULT_BLOCK_MILLIS = 5;
+	/** The default warmup seconds per run */
+	public static final int DEFAULT_WARMUP = 5;
+	/** The default measured seconds per run */
+	public static final int DEFAULT_SECONDS = 10;
+	/** The name prefix of the platform pool threads */
+	public static final String POOL_PREFIX = "platform-worker-";
+	/** The class of the virtual thread scheduler's carrier threads */
+	private static final String CARRIER_CLASS = "jdk.internal.misc.CarrierThread";
+	/** The number of latency histograms recording threads are spread over */
+	private static final int STRIPES = 64;
+
+	private static final ThreadMXBean TX = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * <p>Title: Mode</p>
+	 * <p>Description: The request threading</p>
+	 */
+	public static enum Mode {
+		/** A fixed pool of platform threads, one per core */
+		PLATFORM,
+		/** A new virtual thread per request */
+		VIRTUAL;
+	}
+
+	/** The operation direction */
+	private final Direction direction;
+	/** The simulated blocking time per request in ms */
+	private final int blockMillis;
+	/** The buffer factory for writes */
+	private final ChannelBufferFactory factory = HeapChannelBufferFactory.getInstance();
+	/** Consumes the request results so they are not optimized away */
+	private final AtomicLong sink = new AtomicLong();
+
+	/**
+	 * Runs the comparison over each payload
+	 * @param args The payloads, defaulting to {@link #DEFAULT_PAYLOAD}
+	 */
+	public static void main(final String[] args) {
+		final int blockMillis = Integer.getInteger("loom.blockMillis", DEFAULT_BLOCK_MILLIS);
+		final int warmup = Integer.getInteger("loom.warmup", DEFAULT_WARMUP);
+		final int seconds = Integer.getInteger("loom.seconds", DEFAULT_SECONDS);
+		final Direction direction = Direction.valueOf(System.getProperty("loom.direction", "READ").trim().toUpperCase());
+		final List<Integer> levels = new ArrayList<Integer>();
+		for(String level: System.getProperty("loom.concurrency", DEFAULT_CONCURRENCY).split(",")) {
+			levels.add(Integer.parseInt(level.trim()));
+		}
+		final List<String> payloads = args.length > 0 ? Arrays.asList(args) : Arrays.asList(DEFAULT_PAYLOAD);
+		final VirtualThreadComparison comparison = new VirtualThreadComparison(direction, blockMillis);
+		log("\n\t============================================\n\tVirtual Threads vs %s Platform Threads: %s, %sms block, %ss warmup, %ss measured\n\t============================================",
+				CORES, direction, blockMillis, warmup, seconds);
+		for(String payload: payloads) {
+			final ChannelBuffer json = JSONUnmarshalling.sampleBuffer(payload, BufferType.HEAP);
+			final Person[] persons = JSONUnmarshalling.deserPersons(json.duplicate());
+			log("\n%s", payload);
+			log("%-9s %12s %12s %10s %10s %10s %10s %12s %12s %10s", "Mode", "In flight", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms", "sched CPU %", "CPU \u00B5s/req", "Expired");
+			for(int concurrency: levels) {
+				for(Mode mode: Mode.values()) {
+					comparison.run(mode, concurrency, json, persons, TimeUnit.SECONDS.toNanos(warmup));
+					comparison.run(mode, concurrency, json, persons, TimeUnit.SECONDS.toNanos(seconds)).report();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Creates a new VirtualThreadComparison
+	 * @param direction The operation direction
+	 * @param blockMillis The simulated blocking time per request in ms
+	 */
+	public VirtualThreadComparison(final Direction direction, final int blockMillis) {
+		if(direction==null) throw new IllegalArgumentException("The passed direction was null");
+		if(blockMillis < 0) throw new IllegalArgumentException("Invalid block millis: " + blockMillis);
+		this.direction = direction;
+		this.blockMillis = blockMillis;
+	}
+
+	/**
+	 * Keeps the passed number of requests in flight for the passed duration, then waits for them to complete.
+	 * Requests that have not started by the end of the run are expired rather than run, so a saturated pool
+	 * does not have to work through its whole queue.
+	 * @param mode The request threading
+	 * @param concurrency The number of requests in flight
+	 * @param json The JSON document parsed by reads
+	 * @param persons The persons serialized by writes
+	 * @param durationNanos The time requests are submitted for
+	 * @return the run's results
+	 */
+	public Run run(final Mode mode, final int concurrency, final ChannelBuffer json, final Person[] persons, final long durationNanos) {
+		final Run run = new Run(mode, concurrency);
+		final Semaphore inFlight = new Semaphore(concurrency);
+		final ExecutorService executor = executor(mode);
+		try {
+			final Map<Long, Long> cpuBaseline = schedulerCpu(mode);
+			final long start = System.nanoTime();
+			final long end = start + durationNanos;
+			while(System.nanoTime() < end) {
+				inFlight.acquireUninterruptibly();
+				final long submitted = System.nanoTime();
+				executor.execute(() -> {
+					try {
+						final long started = System.nanoTime();
+						if(started >= end) {
+							// still queued when the run ended: count it as waiting until now, without doing the work
+							run.record(started - submitted);
+							run.expired.incrementAndGet();
+						} else {
+							handle(json, persons);
+							run.record(System.nanoTime() - submitted);
+							run.completed.incrementAndGet();
+						}
+					} finally {
+						inFlight.release();
+					}
+				});
+			}
+			// drain: all permits back means every request has completed or expired
+			inFlight.acquireUninterruptibly(concurrency);
+			run.elapsed = durationNanos;
+			run.schedulerCpu = cpuDelta(cpuBaseline, schedulerCpu(mode));
+		} finally {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(1, TimeUnit.MINUTES);
+			} catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		return run;
+	}
+
+	/**
+	 * Handles one request: the simulated downstream call, then the parse or serialize
+	 */
+	private void handle(final ChannelBuffer json, final Person[] persons) {
+		if(blockMillis > 0) {
+			try {
+				Thread.sleep(blockMillis);
+			} catch (InterruptedException iex) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException("Interrupted in simulated call", iex);
+			}
+		}
+		if(direction==Direction.READ) {
+			sink.addAndGet(JSONUnmarshalling.CODEC.readPersons(json.duplicate()).length);
+		} else {
+			sink.addAndGet(JSONUnmarshalling.CODEC.write(factory, persons).readableBytes());
+		}
+	}
+
+	private static ExecutorService executor(final Mode mode) {
+		if(mode==Mode.VIRTUAL) return Executors.newVirtualThreadPerTaskExecutor();
+		final AtomicInteger serial = new AtomicInteger();
+		return Executors.newFixedThreadPool(CORES, r -> {
+			final Thread t = new Thread(r, POOL_PREFIX + serial.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	/**
+	 * Returns the CPU time in nanos of the threads running the requests in the passed mode, keyed by thread id
+	 */
+	private static Map<Long, Long> schedulerCpu(final Mode mode) {
+		final Map<Long, Long> cpu = new HashMap<Long, Long>();
+		// only platform threads are listed, which includes the carriers but none of the virtual threads
+		for(Thread t: Thread.getAllStackTraces().keySet()) {
+			final boolean scheduler = mode==Mode.VIRTUAL ? CARRIER_CLASS.equals(t.getClass().getName()) : t.getName().startsWith(POOL_PREFIX);
+			if(!scheduler) continue;
+			final long nanos = TX.getThreadCpuTime(t.threadId());
+			if(nanos >= 0) cpu.put(t.threadId(), nanos);
+		}
+		return cpu;
+	}
+
+	/**
+	 * Sums the CPU used since the baseline, counting threads started since then from zero
+	 */
+	private static long cpuDelta(final Map<Long, Long> baseline, final Map<Long, Long> current) {
+		long total = 0;
+		for(Map.Entry<Long, Long> entry: current.entrySet()) {
+			final Long base = baseline.get(entry.getKey());
+			total += entry.getValue() - (base==null ? 0L : base);
+		}
+		return total;
+	}
+
+	/**
+	 * <p>Title: Run</p>
+	 * <p>Description: The results of one run</p>
+	 */
+	public static class Run {
+		/** The request threading */
+		final Mode mode;
+		/** The number of requests in flight */
+		final int concurrency;
+		/** The latency histograms, striped by recording thread */
+		final LatencyHistogram[] stripes = new LatencyHistogram[STRIPES];
+		/** The number of requests run */
+		final AtomicLong completed = new AtomicLong();
+		/** The number of requests still queued at the end of the run, recorded as waiting until then */
+		final AtomicLong expired = new AtomicLong();
+		/** The time requests were submitted for, in nanos */
+		long elapsed = 0;
+		/** The scheduler thread CPU time in nanos */
+		long schedulerCpu = 0;
+
+		Run(final Mode mode, final int concurrency) {
+			this.mode = mode;
+			this.concurrency = concurrency;
+			for(int i = 0; i < STRIPES; i++) stripes[i] = new LatencyHistogram();
+		}
+
+		void record(final long nanos) {
+			final LatencyHistogram h = stripes[(int)(Thread.currentThread().threadId() % STRIPES)];
+			synchronized(h) {
+				h.recordValue(nanos);
+			}
+		}
+
+		/**
+		 * Returns the combined request latencies
+		 * @return the latency histogram in nanos
+		 */
+		public LatencyHistogram getLatency() {
+			final LatencyHistogram total = new LatencyHistogram();
+			for(LatencyHistogram h: stripes) {
+				synchronized(h) {
+					total.add(h);
+				}
+			}
+			return total;
+		}
+
+		/**
+		 * Prints this run as a row of the results table
+		 */
+		void report() {
+			final LatencyHistogram h = getLatency();
+			final long count = completed.get();
+			log("%-9s %12s %12.1f %10.2f %10.2f %10.2f %10.2f %12.1f %12.1f %10s", mode, concurrency,
+					elapsed==0 ? 0D : count * 1E9D / elapsed,
+					h.getValueAtPercentile(50D) / 1E6D, h.getValueAtPercentile(99D) / 1E6D,
+					h.getValueAtPercentile(99.9D) / 1E6D, h.getMaxValue() / 1E6D,
+					// percent of all cores
+					elapsed==0 ? 0D : schedulerCpu * 100D / elapsed / CORES,
+					count==0 ? 0D : schedulerCpu / 1000D / count, expired.get());
+		}
+	}
+
+	public static void log(final Object fmt, final Object...args) {
+		System.out.println(String.format(fmt.toString(), args));
+	}
+
+}
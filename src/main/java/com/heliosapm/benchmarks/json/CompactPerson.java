@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+
+/**
+ * <p>Title: CompactPerson</p>
+ * <p>Description: Primitive specialized variant of {@link Person}. The registration date is held as epoch millis,
+ * the balance as cents, the tags as a packed array in document order and the friends as parallel id and name arrays,
+ * so a person is one object plus its strings and three arrays. Read with {@link CompactPersonReader}.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.CompactPerson</code></p>
+ */
+
+public class CompactPerson {
+	/** The value of {@link #registered} when not set */
+	public static final long NULL_DATE = Long.MIN_VALUE;
+	/** The value of {@link #balance} when not set */
+	public static final long NO_BALANCE = Long.MIN_VALUE;
+
+	String id = null;
+	long index = -1;
+	String guid = null;
+	boolean active = false;
+	/** The balance in cents */
+	long balance = NO_BALANCE;
+	String picture = null;
+	int age = -1;
+	String eyeColor = null;
+	String name = null;
+	String gender = null;
+	String company = null;
+	String email = null;
+	String phone = null;
+	String address = null;
+	/** The registration date in epoch millis */
+	long registered = NULL_DATE;
+	float latitude = -1f;
+	float longitude = -1f;
+	String[] tags = null;
+	/** The friend ids, parallel to {@link #friendNames} */
+	int[] friendIds = null;
+	/** The friend names, parallel to {@link #friendIds} */
+	String[] friendNames = null;
+	String greeting = null;
+	String favoriteFruit = null;
+
+	/**
+	 * Creates a new CompactPerson from the passed person
+	 * @param p The person to copy
+	 * @return the compact person
+	 */
+	public static CompactPerson from(final Person p) {
+		final CompactPerson c = new CompactPerson();
+		c.id = p.id;
+		c.index = p.index;
+		c.guid = p.guid;
+		c.active = p.active;
+		c.picture = p.picture;
+		c.age = p.age;
+		c.eyeColor = p.eyeColor;
+		c.name = p.name;
+		c.gender = p.gender;
+		c.company = p.company;
+		c.email = p.email;
+		c.phone = p.phone;
+		c.address = p.address;
+		c.registered = p.registered==null ? NULL_DATE : p.registered.getTime();
+		c.latitude = p.latitude;
+		c.longitude = p.longitude;
+		if(p.tags!=null) c.tags = p.tags.toArray(new String[p.tags.size()]);
+		if(p.friends!=null) {
+			c.friendIds = new int[p.friends.length];
+			c.friendNames = new String[p.friends.length];
+			for(int i = 0; i < p.friends.length; i++) {
+				c.friendIds[i] = p.friends[i].id;
+				c.friendNames[i] = p.friends[i].name;
+			}
+		}
+		c.greeting = p.greeting;
+		c.favoriteFruit = p.favoriteFruit;
+		return c;
+	}
+
+	/**
+	 * Converts this compact person to a {@link Person}. The balance is dropped since {@link Person} does not map it.
+	 * @return the person
+	 */
+	public Person toPerson() {
+		final Person p = new Person();
+		p.id = id;
+		p.index = index;
+		p.guid = guid;
+		p.active = active;
+		p.picture = picture;
+		p.age = age;
+		p.eyeColor = eyeColor;
+		p.name = name;
+		p.gender = gender;
+		p.company = company;
+		p.email = email;
+		p.phone = phone;
+		p.address = address;
+		p.registered = registered==NULL_DATE ? null : new Date(registered);
+		p.latitude = latitude;
+		p.longitude = longitude;
+		if(tags!=null) p.tags = new HashSet<String>(Arrays.asList(tags));
+		if(friendIds!=null) {
+			p.friends = new Friend[friendIds.length];
+			for(int i = 0; i < friendIds.length; i++) {
+				final Friend f = new Friend();
+				f.id = friendIds[i];
+				f.name = friendNames[i];
+				p.friends[i] = f;
+			}
+		}
+		p.greeting = greeting;
+		p.favoriteFruit = favoriteFruit;
+		return p;
+	}
+
+	/**
+	 * Returns the balance in cents
+	 * @return the balance or {@link #NO_BALANCE} if not set
+	 */
+	public long getBalance() {
+		return balance;
+	}
+
+	/**
+	 * Returns the registration date in epoch millis
+	 * @return the registration date or {@link #NULL_DATE} if not set
+	 */
+	public long getRegistered() {
+		return registered;
+	}
+
+	/**
+	 * Returns the number of friends
+	 * @return the number of friends
+	 */
+	public int getFriendCount() {
+		return friendIds==null ? 0 : friendIds.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("CompactPerson [id=").append(id);
+		builder.append(", index=").append(index);
+		builder.append(", guid=").append(guid);
+		builder.append(", active=").append(active);
+		builder.append(", balance=").append(balance==NO_BALANCE ? "null" : CompactPersonReader.formatCents(balance));
+		builder.append(", age=").append(age);
+		builder.append(", name=").append(name);
+		builder.append(", email=").append(email);
+		builder.append(", registered=").append(registered==NULL_DATE ? "null" : PersonDates.format(new Date(registered)));
+		builder.append(", tags=").append(Arrays.toString(tags));
+		builder.append(", friendIds=").append(Arrays.toString(friendIds));
+		builder.append(", friendNames=").append(Arrays.toString(friendNames));
+		builder.append("]");
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.heliosapm.benchmarks.json.PersonCodec.CodecContext;
+
+/**
+ * <p>Title: CompactPersonReader</p>
+ * <p>Description: Streaming reader of {@link CompactPerson}s. The <b><code>registered</code></b> timestamp and
+ * the <b><code>balance</code></b> currency amount are parsed straight from the parser's character buffer into
+ * epoch millis and cents, with no intermediate strings, formats or calendars.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.CompactPersonReader</code></p>
+ */
+
+public class CompactPersonReader {
+	/** The initial capacity of the tag and friend arrays */
+	public static final int INITIAL_ELEMENTS = 8;
+
+	private static final long MILLIS_PER_DAY = 86400000L;
+
+	/** The factory parsers are created from */
+	private final JsonFactory factory;
+
+	/** The per-thread scratch state */
+	private final ThreadLocal<CodecContext> contexts = new ThreadLocal<CodecContext>() {
+		@Override
+		protected CodecContext initialValue() {
+			return new CodecContext();
+		}
+	};
+
+	/**
+	 * Creates a new CompactPersonReader
+	 * @param factory The factory parsers are created from
+	 */
+	public CompactPersonReader(final JsonFactory factory) {
+		if(factory==null) throw new IllegalArgumentException("The passed factory was null");
+		this.factory = factory;
+	}
+
+	/**
+	 * Reads an array of persons from the passed buffer
+	 * @param json The buffer containing a JSON array of persons
+	 * @return the persons
+	 */
+	public CompactPerson[] readPersons(final ChannelBuffer json) {
+		JsonParser parser = null;
+		try {
+			parser = parser(json);
+			if(parser.nextToken()!=JsonToken.START_ARRAY) throw new IllegalArgumentException("Expected a JSON array");
+			final List<CompactPerson> persons = new ArrayList<CompactPerson>();
+			while(parser.nextToken()==JsonToken.START_OBJECT) {
+				persons.add(readPerson(parser));
+			}
+			json.skipBytes(json.readableBytes());
+			return persons.toArray(new CompactPerson[persons.size()]);
+		} catch (IllegalArgumentException iex) {
+			throw iex;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		} finally {
+			if(parser!=null) try { parser.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	/**
+	 * Reads a person from the passed parser
+	 * @param parser The parser, positioned at the start of the person object
+	 * @return the person
+	 * @throws Exception thrown on any parsing error
+	 */
+	public CompactPerson readPerson(final JsonParser parser) throws Exception {
+		final CompactPerson p = new CompactPerson();
+		while(parser.nextToken()==JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			final JsonToken t = parser.nextToken();
+			switch(field) {
+				case "_id": p.id = parser.getValueAsString(); break;
+				case "index": p.index = parser.getLongValue(); break;
+				case "guid": p.guid = parser.getValueAsString(); break;
+				case "isActive": p.active = parser.getBooleanValue(); break;
+				case "balance":
+					if(t==JsonToken.VALUE_STRING) p.balance = parseCents(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+					break;
+				case "picture": p.picture = parser.getValueAsString(); break;
+				case "age": p.age = parser.getIntValue(); break;
+				case "eyeColor": p.eyeColor = parser.getValueAsString(); break;
+				case "name": p.name = parser.getValueAsString(); break;
+				case "gender": p.gender = parser.getValueAsString(); break;
+				case "company": p.company = parser.getValueAsString(); break;
+				case "email": p.email = parser.getValueAsString(); break;
+				case "phone": p.phone = parser.getValueAsString(); break;
+				case "address": p.address = parser.getValueAsString(); break;
+				case "registered":
+					if(t==JsonToken.VALUE_STRING) p.registered = parseTimestamp(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+					break;
+				case "latitude": p.latitude = parser.getFloatValue(); break;
+				case "longitude": p.longitude = parser.getFloatValue(); break;
+				case "tags": p.tags = readTags(parser); break;
+				case "friends": readFriends(parser, p); break;
+				case "greeting": p.greeting = parser.getValueAsString(); break;
+				case "favoriteFruit": p.favoriteFruit = parser.getValueAsString(); break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		return p;
+	}
+
+	private static String[] readTags(final JsonParser parser) throws Exception {
+		if(parser.getCurrentToken()!=JsonToken.START_ARRAY) return null;
+		String[] tags = new String[INITIAL_ELEMENTS];
+		int count = 0;
+		while(parser.nextToken()!=JsonToken.END_ARRAY) {
+			if(count==tags.length) tags = Arrays.copyOf(tags, count * 2);
+			tags[count++] = parser.getValueAsString();
+		}
+		return count==tags.length ? tags : Arrays.copyOf(tags, count);
+	}
+
+	private static void readFriends(final JsonParser parser, final CompactPerson p) throws Exception {
+		if(parser.getCurrentToken()!=JsonToken.START_ARRAY) return;
+		int[] ids = new int[INITIAL_ELEMENTS];
+		String[] names = new String[INITIAL_ELEMENTS];
+		int count = 0;
+		JsonToken t;
+		while((t = parser.nextToken())!=JsonToken.END_ARRAY) {
+			if(count==ids.length) {
+				ids = Arrays.copyOf(ids, count * 2);
+				names = Arrays.copyOf(names, count * 2);
+			}
+			// a null friend is kept as id 0 with a null name
+			if(t!=JsonToken.START_OBJECT) {
+				parser.skipChildren();
+				count++;
+				continue;
+			}
+			while(parser.nextToken()==JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				parser.nextToken();
+				switch(field) {
+					case "id": ids[count] = parser.getIntValue(); break;
+					case "name": names[count] = parser.getValueAsString(); break;
+					default:
+						parser.skipChildren();
+				}
+			}
+			count++;
+		}
+		p.friendIds = count==ids.length ? ids : Arrays.copyOf(ids, count);
+		p.friendNames = count==names.length ? names : Arrays.copyOf(names, count);
+	}
+
+	/**
+	 * Creates a byte parser over the readable bytes of the passed buffer, copying direct buffers into the thread's scratch array
+	 */
+	private JsonParser parser(final ChannelBuffer json) throws Exception {
+		if (json == null || json.readableBytes()<2)
+			throw new IllegalArgumentException("Incoming data was null or empty");
+		final int len = json.readableBytes();
+		if(json.hasArray()) {
+			return factory.createParser(json.array(), json.arrayOffset() + json.readerIndex(), len);
+		}
+		final byte[] bytes = contexts.get().input(len);
+		json.getBytes(json.readerIndex(), bytes, 0, len);
+		return factory.createParser(bytes, 0, len);
+	}
+
+	// ==========================================================================================
+	//   Value parsers
+	// ==========================================================================================
+
+	/**
+	 * Parses a <code>yyyy-MM-ddTHH:mm:ss</code> timestamp as GMT epoch millis, ignoring any trailing text such as
+	 * the zone offset, the same way {@link PersonDates#parse(String)} does. Values that are not in that exact
+	 * shape are handed to {@link PersonDates#parse(String)}.
+	 * @param c The character buffer
+	 * @param off The offset of the value
+	 * @param len The length of the value
+	 * @return the epoch millis
+	 */
+	public static long parseTimestamp(final char[] c, final int off, final int len) {
+		if(len >= 19 && c[off+4]=='-' && c[off+7]=='-' && c[off+10]=='T' && c[off+13]==':' && c[off+16]==':') {
+			final int year = digits(c, off, 4), month = digits(c, off+5, 2), day = digits(c, off+8, 2);
+			final int hour = digits(c, off+11, 2), minute = digits(c, off+14, 2), second = digits(c, off+17, 2);
+			if(year >= 0 && month >= 1 && month <= 12 && day >= 1 && day <= 31 && hour >= 0 && hour < 24
+					&& minute >= 0 && minute < 60 && second >= 0 && second < 60) {
+				return epochDay(year, month, day) * MILLIS_PER_DAY + hour * 3600000L + minute * 60000L + second * 1000L;
+			}
+		}
+		return PersonDates.parse(new String(c, off, len)).getTime();
+	}
+
+	/**
+	 * Parses a currency amount such as <code>$2,809.46</code> or <code>-$12.5</code> into cents
+	 * @param c The character buffer
+	 * @param off The offset of the value
+	 * @param len The length of the value
+	 * @return the amount in cents
+	 */
+	public static long parseCents(final char[] c, final int off, final int len) {
+		final int end = off + len;
+		int i = off;
+		boolean negative = false;
+		if(i < end && c[i]=='-') { negative = true; i++; }
+		if(i < end && c[i]=='$') i++;
+		if(i < end && c[i]=='-' && !negative) { negative = true; i++; }
+		long units = 0;
+		int digits = 0;
+		for(; i < end && c[i]!='.'; i++) {
+			final char ch = c[i];
+			if(ch==',') continue;
+			if(ch < '0' || ch > '9' || digits==17) throw new IllegalArgumentException("Invalid currency amount [" + new String(c, off, len) + "]");
+			units = units * 10 + (ch - '0');
+			digits++;
+		}
+		int cents = 0, fraction = 0;
+		if(i < end) {
+			for(i++; i < end; i++) {
+				final char ch = c[i];
+				if(ch < '0' || ch > '9' || fraction==2) throw new IllegalArgumentException("Invalid currency amount [" + new String(c, off, len) + "]");
+				cents = cents * 10 + (ch - '0');
+				fraction++;
+			}
+		}
+		if(digits==0 && fraction==0) throw new IllegalArgumentException("Invalid currency amount [" + new String(c, off, len) + "]");
+		if(fraction==1) cents *= 10;
+		final long amount = units * 100 + cents;
+		return negative ? -amount : amount;
+	}
+
+	/**
+	 * Formats an amount in cents the way the source data does, e.g. <code>$2,809.46</code>
+	 * @param cents The amount in cents
+	 * @return the formatted amount
+	 */
+	public static String formatCents(final long cents) {
+		final long abs = Math.abs(cents);
+		return String.format(Locale.US, "%s$%,d.%02d", cents < 0 ? "-" : "", abs / 100, abs % 100);
+	}
+
+	/**
+	 * Returns the value of a run of decimal digits, or -1 if any is not a digit
+	 */
+	private static int digits(final char[] c, final int off, final int count) {
+		int v = 0;
+		for(int i = off, end = off + count; i < end; i++) {
+			final int d = c[i] - '0';
+			if(d < 0 || d > 9) return -1;
+			v = v * 10 + d;
+		}
+		return v;
+	}
+
+	/**
+	 * Returns the number of days since 1970-01-01 of the passed proleptic Gregorian date
+	 */
+	static long epochDay(final int year, final int month, final int day) {
+		final int y = month <= 2 ? year - 1 : year;
+		final int era = (y >= 0 ? y : y - 399) / 400;
+		final int yoe = y - era * 400;
+		final int doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468;
+	}
+
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.lang.management.RuntimeMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+import org.openjdk.jmh.profile.ProfilerResult;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.Result;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import com.sun.management.GcInfo;
+
+/**
+ * <p>Title: GcPauseRecorder</p>
+ * <p>Description: Records the individual collections reported by {@link GarbageCollectionNotificationInfo} events
+ * between {@link #start()} and {@link #stop()} and summarizes them as profiler results: per collector pause counts,
+ * max and p99 pause and promoted bytes, and the mean occupancy of each heap pool before and after a collection.</p>
+ * <p>Promoted bytes are the growth, during a collection, of the heap pools that collector does not manage,
+ * which for a young collection is the old generation.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.GcPauseRecorder</code></p>
+ */
+
+public class GcPauseRecorder implements NotificationListener {
+	/** The shared recorder, registered with every collector once */
+	private static volatile GcPauseRecorder instance = null;
+
+	private static final RuntimeMXBean RUNTIME = ManagementFactory.getRuntimeMXBean();
+
+	/** The collections recorded since {@link #start()} */
+	private final ConcurrentLinkedQueue<GarbageCollectionNotificationInfo> events = new ConcurrentLinkedQueue<GarbageCollectionNotificationInfo>();
+	/** The pools managed by each collector, keyed by collector name */
+	private final Map<String, Set<String>> collectorPools = new HashMap<String, Set<String>>();
+	/** The heap pool names */
+	private final Set<String> heapPools = new HashSet<String>();
+	/** The JVM uptime in ms at {@link #start()}, collections starting earlier are ignored */
+	private volatile long startUptime = Long.MAX_VALUE;
+
+	/**
+	 * Returns the shared recorder, registering it with the collectors on first call
+	 * @return the recorder
+	 */
+	public static GcPauseRecorder getInstance() {
+		if(instance==null) {
+			synchronized(GcPauseRecorder.class) {
+				if(instance==null) instance = new GcPauseRecorder();
+			}
+		}
+		return instance;
+	}
+
+	private GcPauseRecorder() {
+		for(MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+			if(pool.getType()==MemoryType.HEAP) heapPools.add(pool.getName());
+		}
+		for(GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+			collectorPools.put(gc.getName(), new HashSet<String>(Arrays.asList(gc.getMemoryPoolNames())));
+			if(gc instanceof NotificationEmitter) {
+				((NotificationEmitter)gc).addNotificationListener(this, null, null);
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see javax.management.NotificationListener#handleNotification(javax.management.Notification, java.lang.Object)
+	 */
+	@Override
+	public void handleNotification(final Notification notification, final Object handback) {
+		if(!GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) return;
+		final GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData)notification.getUserData());
+		if(info.getGcInfo().getStartTime() >= startUptime) events.add(info);
+	}
+
+	/**
+	 * Discards the recorded collections and starts recording
+	 */
+	public void start() {
+		events.clear();
+		startUptime = RUNTIME.getUptime();
+	}
+
+	/**
+	 * Stops recording and summarizes the collections recorded since {@link #start()}.
+	 * Notifications are delivered asynchronously, so a collection ending just before this call may be missed.
+	 * @return the results
+	 */
+	public Collection<Result> stop() {
+		startUptime = Long.MAX_VALUE;
+		final Map<String, List<GcInfo>> byCollector = new LinkedHashMap<String, List<GcInfo>>();
+		for(String name: collectorPools.keySet()) byCollector.put(name, new ArrayList<GcInfo>());
+		GarbageCollectionNotificationInfo info;
+		while((info = events.poll())!=null) {
+			List<GcInfo> infos = byCollector.get(info.getGcName());
+			if(infos==null) {
+				infos = new ArrayList<GcInfo>();
+				byCollector.put(info.getGcName(), infos);
+			}
+			infos.add(info.getGcInfo());
+		}
+		final List<Result> results = new ArrayList<Result>();
+		final Map<String, long[]> poolTotals = new LinkedHashMap<String, long[]>();
+		int totalEvents = 0;
+		for(Map.Entry<String, List<GcInfo>> entry: byCollector.entrySet()) {
+			final String name = resultName(entry.getKey());
+			final List<GcInfo> infos = entry.getValue();
+			final Set<String> managed = collectorPools.get(entry.getKey());
+			final long[] pauses = new long[infos.size()];
+			long promoted = 0;
+			for(int i = 0; i < pauses.length; i++) {
+				final GcInfo gi = infos.get(i);
+				pauses[i] = gi.getDuration();
+				final Map<String, MemoryUsage> before = gi.getMemoryUsageBeforeGc(), after = gi.getMemoryUsageAfterGc();
+				for(String pool: heapPools) {
+					final MemoryUsage b = before.get(pool), a = after.get(pool);
+					if(b==null || a==null) continue;
+					if(managed!=null && !managed.contains(pool) && a.getUsed() > b.getUsed()) promoted += a.getUsed() - b.getUsed();
+					long[] totals = poolTotals.get(pool);
+					if(totals==null) {
+						totals = new long[2];
+						poolTotals.put(pool, totals);
+					}
+					totals[0] += b.getUsed();
+					totals[1] += a.getUsed();
+				}
+			}
+			totalEvents += pauses.length;
+			Arrays.sort(pauses);
+			results.add(new ProfilerResult("GC-" + name + "-Pauses", pauses.length, "pauses", AggregationPolicy.AVG));
+			results.add(new ProfilerResult("GC-" + name + "-MaxPause", pauses.length==0 ? 0 : pauses[pauses.length-1], "ms", AggregationPolicy.MAX));
+			results.add(new ProfilerResult("GC-" + name + "-P99Pause", percentile(pauses, 0.99D), "ms", AggregationPolicy.AVG));
+			results.add(new ProfilerResult("GC-" + name + "-Promoted", promoted / 1024D, "KB", AggregationPolicy.AVG));
+		}
+		for(Map.Entry<String, long[]> entry: poolTotals.entrySet()) {
+			final String name = resultName(entry.getKey());
+			results.add(new ProfilerResult("GC-" + name + "-Before", entry.getValue()[0] / 1024D / totalEvents, "KB", AggregationPolicy.AVG));
+			results.add(new ProfilerResult("GC-" + name + "-After", entry.getValue()[1] / 1024D / totalEvents, "KB", AggregationPolicy.AVG));
+		}
+		return results;
+	}
+
+	/**
+	 * Returns the nearest rank percentile of the passed sorted values
+	 * @param sorted The sorted values
+	 * @param p The percentile, from 0 to 1
+	 * @return the percentile or 0 if there are no values
+	 */
+	static long percentile(final long[] sorted, final double p) {
+		if(sorted.length==0) return 0;
+		final int rank = (int)Math.ceil(p * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	/**
+	 * Converts a collector or pool name such as <code>PS Old Gen</code> to a result name fragment
+	 */
+	private static String resultName(final String name) {
+		return name.replace(' ', '_');
+	}
+
+}
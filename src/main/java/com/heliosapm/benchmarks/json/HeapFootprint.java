@@ -0,0 +1,172 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * <p>Title: HeapFootprint</p>
+ * <p>Description: Reports the retained heap, and off-heap bytes where relevant, of holding a large number of person
+ * records in each in-memory representation. Records are copied from a payload, re-parsing it as many times as
+ * needed so every record is a distinct object graph.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.HeapFootprint</code></p>
+ * <p>Usage: <b><code>HeapFootprint [record count] [payload]</code></b>. 1M records need roughly a 4GB heap,
+ * e.g. <code>-Xmx4g -XX:MaxDirectMemorySize=2g</code>.</p>
+ */
+
+public class HeapFootprint {
+	/** The default number of records */
+	public static final int DEFAULT_COUNT = 1000000;
+	/** The default source payload */
+	public static final String DEFAULT_PAYLOAD = "sample-614kb.json.gz";
+
+	private static final MemoryMXBean MEM = ManagementFactory.getMemoryMXBean();
+
+	/**
+	 * Runs the report
+	 * @param args The optional record count and payload name
+	 */
+	public static void main(final String[] args) {
+		final int count = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_COUNT;
+		final String payload = args.length > 1 ? args[1] : DEFAULT_PAYLOAD;
+		final ChannelBuffer source = JSONUnmarshalling.sampleBuffer(payload, JSONUnmarshalling.BufferType.HEAP);
+		final ObjectMapper mapper = new ObjectMapper();
+		log("\n\t============================================\n\tHeap Footprint: %s records from [%s]\n\t============================================", count, payload);
+		log("%-20s %16s %16s %12s", "Representation", "Heap bytes", "Off-heap bytes", "Bytes/record");
+
+		// Person[]
+		long base = usedHeap();
+		Person[] persons = new Person[count];
+		for(int i = 0; i < count;) {
+			for(Person p: JSONUnmarshalling.deserPersons(source.duplicate())) {
+				if(i==count) break;
+				persons[i++] = p;
+			}
+		}
+		// persons is read after the measurement so it stays reachable
+		report("Person[]", usedHeap() - base, 0, persons.length);
+		persons = null;
+
+		// Person[] from the stream codec, without and with shared low cardinality strings
+		base = usedHeap();
+		persons = readCopies(count, source, new PersonStreamCodec(mapper.getFactory()));
+		report("Person[] stream", usedHeap() - base, 0, persons.length);
+		persons = null;
+		base = usedHeap();
+		persons = readCopies(count, source, new PersonStreamCodec(mapper.getFactory(), new StringCanonicalizer()));
+		report("Person[] canonical", usedHeap() - base, 0, persons.length);
+		persons = null;
+
+		// CompactPerson[]
+		final CompactPersonReader compactReader = new CompactPersonReader(mapper.getFactory());
+		base = usedHeap();
+		CompactPerson[] compact = new CompactPerson[count];
+		for(int i = 0; i < count;) {
+			for(CompactPerson p: compactReader.readPersons(source.duplicate())) {
+				if(i==count) break;
+				compact[i++] = p;
+			}
+		}
+		report("CompactPerson[]", usedHeap() - base, 0, compact.length);
+		compact = null;
+
+		// flyweight records in a direct buffer
+		final PersonRecordWriter writer = new PersonRecordWriter(mapper.getFactory());
+		final ChannelBuffer scratch = ChannelBuffers.dynamicBuffer(source.readableBytes());
+		final int perPass = writer.transcode(source.duplicate(), scratch);
+		final int passBytes = scratch.readableBytes();
+		base = usedHeap();
+		ChannelBuffer records = ChannelBuffers.directBuffer((int)Math.min(Integer.MAX_VALUE, (long)passBytes * (count / perPass + 1)));
+		int written = 0;
+		while(written < count) {
+			// the records are plain bytes, so the one transcoded pass is copied repeatedly, whole records at a time
+			final int n = Math.min(perPass, count - written);
+			records.writeBytes(scratch, 0, n==perPass ? passBytes : recordsLength(scratch, n));
+			written += n;
+		}
+		report("Flyweight records", usedHeap() - base, records.writerIndex(), written);
+		records = null;
+	}
+
+	/**
+	 * Reads the passed number of persons, re-reading the source as many times as needed
+	 * @param count The number of persons
+	 * @param source The buffer containing a JSON array of persons
+	 * @param codec The codec to read with
+	 * @return the persons
+	 */
+	private static Person[] readCopies(final int count, final ChannelBuffer source, final PersonStreamCodec codec) {
+		final Person[] persons = new Person[count];
+		for(int i = 0; i < count;) {
+			for(Person p: codec.readPersons(source.duplicate())) {
+				if(i==count) break;
+				persons[i++] = p;
+			}
+		}
+		return persons;
+	}
+
+	/**
+	 * Returns the number of bytes taken by the first records in the passed buffer
+	 * @param records The buffer of flyweight records
+	 * @param n The number of records
+	 * @return the size of the records in bytes
+	 */
+	private static int recordsLength(final ChannelBuffer records, final int n) {
+		final PersonFlyweight fw = new PersonFlyweight();
+		int offset = 0;
+		for(int i = 0; i < n; i++) {
+			offset = fw.wrap(records, offset).next();
+		}
+		return offset;
+	}
+
+	/**
+	 * Returns the used heap after repeated full collections
+	 * @return the used heap in bytes
+	 */
+	public static long usedHeap() {
+		for(int i = 0; i < 4; i++) {
+			System.gc();
+			try { Thread.sleep(100); } catch (InterruptedException iex) {/* No Op */}
+		}
+		return MEM.getHeapMemoryUsage().getUsed();
+	}
+
+	/**
+	 * Logs one line of the report
+	 * @param name The representation name
+	 * @param heap The retained heap bytes
+	 * @param offHeap The off-heap bytes
+	 * @param count The number of records
+	 */
+	public static void report(final String name, final long heap, final long offHeap, final int count) {
+		log("%-20s %16s %16s %12.1f", name, heap, offHeap, (double)(heap + offHeap) / count);
+	}
+
+	public static void log(final Object fmt, final Object...args) {
+		System.out.println(String.format(fmt.toString(), args));
+	}
+
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.ExternalProfiler;
+import org.openjdk.jmh.results.AggregationPolicy;
+import org.openjdk.jmh.results.Aggregator;
+import org.openjdk.jmh.results.BenchmarkResult;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.ResultRole;
+
+/**
+ * <p>Title: InliningProfiler</p>
+ * <p>Description: Runs the forked JVM with <code>-XX:+PrintCompilation -XX:+PrintInlining</code>, captures the
+ * compilation log from its output and reports the call sites that were not inlined within the call trees of the
+ * target methods, with the reason HotSpot gave. The targets default to
+ * <code>JSONUnmarshalling::parseToObject</code> and <code>JSONUnmarshalling::serializeToBuffer</code> and can be
+ * overridden with a comma separated list in the <b><code>inlining.targets</code></b> system property.</p>
+ * <p>The failures are a secondary result whose score is the number of distinct failed call paths, the paths
+ * themselves are printed as the result's extended info.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.InliningProfiler</code></p>
+ */
+
+public class InliningProfiler implements ExternalProfiler {
+	/** The system property holding the target methods */
+	public static final String TARGETS_PROP = "inlining.targets";
+	/** The default target methods */
+	public static final String DEFAULT_TARGETS = "JSONUnmarshalling::parseToObject,JSONUnmarshalling::serializeToBuffer";
+
+	/** Matches a PrintCompilation line, capturing the compiled method */
+	private static final Pattern COMPILE_LINE = Pattern.compile("^\\s*\\d+\\s+\\d+\\s.*?(\\S+::\\S+)\\s+(?:@ \\d+\\s+)?\\(\\d+ bytes\\).*$");
+	/** Matches a PrintInlining call site line, capturing the callee and the decision */
+	private static final Pattern INLINE_LINE = Pattern.compile("^.*?@ \\d+\\s+(\\S+::\\S+) \\((?:\\d+ bytes|not loaded)\\)\\s*(.*)$");
+
+	/** The target methods */
+	private final List<String> targets = new ArrayList<String>();
+
+	/**
+	 * Creates a new InliningProfiler
+	 */
+	public InliningProfiler() {
+		for(String target: System.getProperty(TARGETS_PROP, DEFAULT_TARGETS).split(",")) {
+			if(!target.trim().isEmpty()) targets.add(target.trim());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.openjdk.jmh.profile.Profiler#getDescription()
+	 */
+	@Override
+	public String getDescription() {
+		return "Inlining failures in the call trees of " + targets;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.openjdk.jmh.profile.ExternalProfiler#addJVMInvokeOptions(org.openjdk.jmh.infra.BenchmarkParams)
+	 */
+	@Override
+	public Collection<String> addJVMInvokeOptions(final BenchmarkParams params) {
+		return Collections.emptyList();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.openjdk.jmh.profile.ExternalProfiler#addJVMOptions(org.openjdk.jmh.infra.BenchmarkParams)
+	 */
+	@Override
+	public Collection<String> addJVMOptions(final BenchmarkParams params) {
+		return Arrays.asList("-XX:+UnlockDiagnosticVMOptions", "-XX:+PrintCompilation", "-XX:+PrintInlining");
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.openjdk.jmh.profile.ExternalProfiler#beforeTrial(org.openjdk.jmh.infra.BenchmarkParams)
+	 */
+	@Override
+	public void beforeTrial(final BenchmarkParams benchmarkParams) {
+		/* No Op */
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.openjdk.jmh.profile.ExternalProfiler#afterTrial(org.openjdk.jmh.results.BenchmarkResult, long, java.io.File, java.io.File)
+	 */
+	@Override
+	public Collection<? extends Result> afterTrial(final BenchmarkResult br, final long pid, final File stdOut, final File stdErr) {
+		BufferedReader reader = null;
+		try {
+			reader = new BufferedReader(new InputStreamReader(new FileInputStream(stdOut), "UTF-8"));
+			return Collections.singletonList(new InliningResult(parse(reader)));
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to read the compilation log from [" + stdOut + "]", ex);
+		} finally {
+			if(reader!=null) try { reader.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.openjdk.jmh.profile.ExternalProfiler#allowPrintOut()
+	 */
+	@Override
+	public boolean allowPrintOut() {
+		// the log is large and the summary is in the result
+		return false;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.openjdk.jmh.profile.ExternalProfiler#allowPrintErr()
+	 */
+	@Override
+	public boolean allowPrintErr() {
+		return true;
+	}
+
+	/**
+	 * Reads a PrintCompilation / PrintInlining log and collects the failed call sites under the target methods
+	 * @param reader The log reader
+	 * @return the failed call paths, from the target method to the callee and followed by the reason,
+	 * with the number of compilations each was seen in
+	 * @throws Exception thrown on any error reading the log
+	 */
+	Map<String, Integer> parse(final BufferedReader reader) throws Exception {
+		final Map<String, Integer> failures = new TreeMap<String, Integer>();
+		// the call tree of the current compilation, as parallel lists of depths and methods
+		final List<Integer> depths = new ArrayList<Integer>();
+		final List<String> methods = new ArrayList<String>();
+		String line;
+		while((line = reader.readLine())!=null) {
+			Matcher m = INLINE_LINE.matcher(line);
+			if(m.matches()) {
+				if(methods.isEmpty()) continue;
+				// the depth is the column of the @, flags such as ! are printed to the left of the indent
+				final int depth = line.indexOf("@ ");
+				while(depths.size() > 1 && depths.get(depths.size()-1) >= depth) {
+					depths.remove(depths.size()-1);
+					methods.remove(methods.size()-1);
+				}
+				final String callee = shortName(m.group(1));
+				final String reason = m.group(2).trim();
+				if(isFailure(reason)) {
+					final int from = targetIndex(methods);
+					if(from >= 0) {
+						final StringBuilder path = new StringBuilder();
+						for(int i = from; i < methods.size(); i++) {
+							path.append(methods.get(i)).append(" -> ");
+						}
+						path.append(callee).append(" : ").append(reason);
+						final String key = path.toString();
+						final Integer count = failures.get(key);
+						failures.put(key, count==null ? 1 : count + 1);
+					}
+				}
+				depths.add(depth);
+				methods.add(callee);
+				continue;
+			}
+			m = COMPILE_LINE.matcher(line);
+			if(m.matches()) {
+				depths.clear();
+				methods.clear();
+				depths.add(-1);
+				methods.add(shortName(m.group(1)));
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Returns the index of the outermost target method in the passed call path
+	 */
+	private int targetIndex(final List<String> methods) {
+		for(int i = 0; i < methods.size(); i++) {
+			final String method = methods.get(i);
+			for(String target: targets) {
+				if(method.equals(target) || method.endsWith("." + target)) return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Determines if the passed PrintInlining decision means the call site was not inlined.
+	 * C1 prints no reason for an inlined call, C2 prints <code>inline (hot)</code> and intrinsics are as good as inlined.
+	 */
+	static boolean isFailure(final String reason) {
+		return !reason.isEmpty() && !reason.startsWith("inline") && !reason.contains("force inline")
+				&& !reason.contains("intrinsic") && !reason.equals("accessor");
+	}
+
+	/**
+	 * Shortens <code>com.foo.Bar::baz</code> or <code>com/foo/Bar::baz</code> to <code>Bar::baz</code>
+	 */
+	static String shortName(final String method) {
+		final int sep = method.indexOf("::");
+		final int pkg = Math.max(method.lastIndexOf('.', sep), method.lastIndexOf('/', sep));
+		return pkg < 0 ? method : method.substring(pkg + 1);
+	}
+
+	/**
+	 * <p>Title: InliningResult</p>
+	 * <p>Description: The inlining failures of a trial, scored by the number of distinct failed call paths</p>
+	 * <p>Company: Helios Development Group LLC</p>
+	 * @author Whitehead (nwhitehead AT heliosdev DOT org)
+	 * <p><code>com.heliosapm.benchmarks.json.InliningProfiler.InliningResult</code></p>
+	 */
+	public static class InliningResult extends Result<InliningResult> {
+		private static final long serialVersionUID = -2894711925367251037L;
+		/** The failed call paths and the number of compilations each was seen in */
+		private final TreeMap<String, Integer> failures;
+
+		/**
+		 * Creates a new InliningResult
+		 * @param failures The failed call paths and the number of compilations each was seen in
+		 */
+		public InliningResult(final Map<String, Integer> failures) {
+			super(ResultRole.SECONDARY, "InliningFailures", of(failures.size()), "failures", AggregationPolicy.MAX);
+			this.failures = new TreeMap<String, Integer>(failures);
+		}
+
+		/**
+		 * Returns the failed call paths and the number of compilations each was seen in
+		 * @return the failures
+		 */
+		public Map<String, Integer> getFailures() {
+			return Collections.unmodifiableMap(failures);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.openjdk.jmh.results.Result#getThreadAggregator()
+		 */
+		@Override
+		protected Aggregator<InliningResult> getThreadAggregator() {
+			return new FailureAggregator();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.openjdk.jmh.results.Result#getIterationAggregator()
+		 */
+		@Override
+		protected Aggregator<InliningResult> getIterationAggregator() {
+			return new FailureAggregator();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.openjdk.jmh.results.Result#toString()
+		 */
+		@Override
+		public String toString() {
+			return failures.size() + " inlining failures";
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see org.openjdk.jmh.results.Result#extendedInfo()
+		 */
+		@Override
+		public String extendedInfo() {
+			final StringBuilder b = new StringBuilder("Inlining failures (compilations seen in):\n");
+			if(failures.isEmpty()) b.append("\t<none>\n");
+			for(Map.Entry<String, Integer> entry: failures.entrySet()) {
+				b.append(String.format("\t%5d  %s%n", entry.getValue(), entry.getKey()));
+			}
+			return b.toString();
+		}
+	}
+
+	/**
+	 * Merges inlining results, summing the counts of each failed call path
+	 */
+	static class FailureAggregator implements Aggregator<InliningResult> {
+		@Override
+		public InliningResult aggregate(final Collection<InliningResult> results) {
+			final Map<String, Integer> merged = new TreeMap<String, Integer>();
+			for(InliningResult r: results) {
+				for(Map.Entry<String, Integer> entry: r.failures.entrySet()) {
+					final Integer count = merged.get(entry.getKey());
+					merged.put(entry.getKey(), count==null ? entry.getValue() : count + entry.getValue());
+				}
+			}
+			return new InliningResult(merged);
+		}
+	}
+
+}
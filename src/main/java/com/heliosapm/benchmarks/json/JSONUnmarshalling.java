@@ -18,6 +18,9 @@ under the License.
  */
 package com.heliosapm.benchmarks.json;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
@@ -37,7 +40,10 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.zip.GZIPInputStream;
 
@@ -46,22 +52,32 @@ import org.jboss.netty.buffer.ChannelBufferFactory;
 import org.jboss.netty.buffer.ChannelBufferInputStream;
 import org.jboss.netty.buffer.ChannelBufferOutputStream;
 import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.buffer.CompositeChannelBuffer;
 import org.jboss.netty.buffer.DirectChannelBufferFactory;
 import org.jboss.netty.buffer.HeapChannelBufferFactory;
+import org.jboss.netty.handler.codec.embedder.DecoderEmbedder;
+import org.jboss.netty.handler.codec.embedder.EncoderEmbedder;
+import org.openjdk.jmh.annotations.AuxCounters;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
 import org.openjdk.jmh.annotations.Fork;
-import org.openjdk.jmh.annotations.Group;
-import org.openjdk.jmh.annotations.GroupThreads;
 import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.annotations.OperationsPerInvocation;
 import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
 import org.openjdk.jmh.annotations.TearDown;
 import org.openjdk.jmh.infra.Blackhole;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.heliosapm.benchmarks.json.PersonStreamReader.PersonHandler;
+import com.heliosapm.benchmarks.json.SlabPool.PooledBuffer;
+import com.heliosapm.benchmarks.json.SlabPool.SlabOutputStream;
 import com.heliosapm.utils.config.ConfigurationHelper;
 import com.heliosapm.utils.enums.SpaceUnit;
 import com.heliosapm.utils.io.NIOHelper;
@@ -86,8 +102,8 @@ public class JSONUnmarshalling {
 	public static final int LOOPS = ConfigurationHelper.getIntSystemThenEnvProperty("loops", 20);
 	
 	private static final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
-	private static final OperatingSystemMXBean OS =  (OperatingSystemMXBean)sun.management.ManagementFactoryHelper.getOperatingSystemMXBean();
-	private static final ThreadMXBean TX =  (ThreadMXBean)sun.management.ManagementFactoryHelper.getThreadMXBean();
+	private static final OperatingSystemMXBean OS =  (OperatingSystemMXBean)ManagementFactory.getOperatingSystemMXBean();
+	private static final ThreadMXBean TX =  (ThreadMXBean)ManagementFactory.getThreadMXBean();
 	
 	public static final int loopsPerOp = 1000;
 	public static final TimeUnit outputTimeUnit = TimeUnit.MILLISECONDS;
@@ -100,10 +116,29 @@ public class JSONUnmarshalling {
 			"sample-1kb.json.gz", "sample-56kb.json.gz", "sample-118kb.json.gz", "sample-614kb.json.gz"
 	)));
 	
+	/** The payload name prefix for generated datasets, e.g. <code>generated-64mb</code> */
+	public static final String GENERATED_PREFIX = "generated-";
+	/** The payload name prefix for uncompressed JSON files, e.g. <code>file:/data/people.json</code> */
+	public static final String FILE_PREFIX = "file:";
+	/** The seed used for generated datasets */
+	public static final int GENERATOR_SEED = ConfigurationHelper.getIntSystemThenEnvProperty("generator.seed", (int)PersonGenerator.DEFAULT_SEED);
+	
 	private static final ChannelBufferFactory directFactory = new DirectChannelBufferFactory();
 	private static final ChannelBufferFactory heapFactory = new HeapChannelBufferFactory();
+	private static final SlabPool heapSlabs = new SlabPool(heapFactory, 
+			ConfigurationHelper.getIntSystemThenEnvProperty("slab.size", SlabPool.DEFAULT_SLAB_SIZE), 
+			ConfigurationHelper.getIntSystemThenEnvProperty("slab.max", SlabPool.DEFAULT_MAX_POOLED));
+	private static final SlabPool directSlabs = new SlabPool(directFactory, 
+			ConfigurationHelper.getIntSystemThenEnvProperty("slab.size", SlabPool.DEFAULT_SLAB_SIZE), 
+			ConfigurationHelper.getIntSystemThenEnvProperty("slab.max", SlabPool.DEFAULT_MAX_POOLED));
+	/** Serialized size per item estimates, seeded with {@link #PERSON_APPROX_SIZE} */
+	private static final SizeEstimator SIZES = new SizeEstimator(PERSON_APPROX_SIZE);
 	private static final Map<String, ChannelBuffer> DIRECT_DATA_BUFFERS = new HashMap<String, ChannelBuffer>(DATA.size());
 	private static final Map<String, ChannelBuffer> HEAP_DATA_BUFFERS = new HashMap<String, ChannelBuffer>(DATA.size());
+	/** Generated and file datasets keyed by buffer type and payload name */
+	private static final Map<String, ChannelBuffer> LOADED_BUFFERS = new HashMap<String, ChannelBuffer>();
+	/** Memory mapped sources keyed by payload name */
+	private static final Map<String, MappedJsonSource> MAPPED_SOURCES = new HashMap<String, MappedJsonSource>();
 	private static TimeUnit cpuUnit = TimeUnit.SECONDS;
 	private static SpaceUnit memUnit = SpaceUnit.MEGABYTES;
 	
@@ -149,6 +184,16 @@ public class JSONUnmarshalling {
 	}
 
 	private static final ObjectMapper jsonMapper = new ObjectMapper();
+	/** Codec with pre-resolved readers and writers, built from the same mapper as the static helpers */
+	public static final PersonCodec CODEC = new PersonCodec(jsonMapper);
+	/** The hand written person codec */
+	public static final PersonStreamCodec STREAM_CODEC = new PersonStreamCodec(jsonMapper.getFactory());
+	/** The hand written person codec sharing low cardinality values through a canonicalizer */
+	public static final PersonStreamCodec CANONICAL_CODEC = new PersonStreamCodec(jsonMapper.getFactory(), new StringCanonicalizer());
+	/** The compact person reader */
+	public static final CompactPersonReader COMPACT = new CompactPersonReader(jsonMapper.getFactory());
+	/** The lazy person view indexer */
+	public static final LazyPersonIndexer LAZY = new LazyPersonIndexer(jsonMapper);
 	
   
   public static final ChannelBuffer serializeToBuffer(final ChannelBufferFactory bfactory, final Person...object) {
@@ -158,10 +203,11 @@ public class JSONUnmarshalling {
 	    Writer wos = null;
 	    try {
 //	    	final ChannelBuffer b = bfactory.getBuffer(1024);
-	    	final ChannelBuffer b = ChannelBuffers.dynamicBuffer(PERSON_APPROX_SIZE * object.length, bfactory);
+	    	final ChannelBuffer b = ChannelBuffers.dynamicBuffer(SIZES.estimate(Person.class, object.length), bfactory);
 	    	os = new ChannelBufferOutputStream(b);
 	    	wos = new OutputStreamWriter(os, UTF8);
 	    	jsonMapper.writeValue(wos, object);
+	    	SIZES.record(Person.class, object.length, b.readableBytes());
 	        return b;
 	    } catch (Exception e) {
 	      throw new RuntimeException(e);
@@ -171,6 +217,61 @@ public class JSONUnmarshalling {
 	    }
 	  }
   
+  /**
+   * Serializes the passed persons to a buffer created by the passed factory through a UTF-8 byte generator
+   * writing straight into the buffer's {@link OutputStream}, rather than producing chars that an
+   * {@link OutputStreamWriter} then re-encodes to bytes as {@link #serializeToBuffer(ChannelBufferFactory, Person...)} does.
+   * The output is identical for text in the Basic Multilingual Plane. Characters outside it are written as
+   * <code>&#92;uXXXX&#92;uXXXX</code> surrogate pair escapes rather than 4 raw UTF-8 bytes, so such JSON is semantically
+   * equal but 8 bytes longer per character.
+   * @param bfactory The factory to create the output buffer with
+   * @param object The persons to serialize
+   * @return the buffer containing the JSON
+   */
+  public static final ChannelBuffer serializeToBufferRaw(final ChannelBufferFactory bfactory, final Person...object) {
+	    if (object == null)
+	      throw new IllegalArgumentException("Object was null");
+	    JsonGenerator gen = null;
+	    try {
+	    	final ChannelBuffer b = ChannelBuffers.dynamicBuffer(SIZES.estimate(Person.class, object.length), bfactory);
+	    	gen = jsonMapper.getFactory().createGenerator((OutputStream)new ChannelBufferOutputStream(b), JsonEncoding.UTF8);
+	    	jsonMapper.writeValue(gen, object);
+	    	SIZES.record(Person.class, object.length, b.readableBytes());
+	        return b;
+	    } catch (Exception e) {
+	      throw new RuntimeException(e);
+	    } finally {
+	    	if(gen!=null) try { gen.close(); } catch (Exception x) {/* No Op */}
+	    }
+	  }
+  
+  /**
+   * Serializes the passed persons into a chain of slabs acquired from the passed pool.
+   * The caller must release the returned buffer to return the slabs to the pool.
+   * @param pool The pool to acquire slabs from
+   * @param object The persons to serialize
+   * @return the pooled buffer
+   */
+  public static final PooledBuffer serializeToPooledBuffer(final SlabPool pool, final Person...object) {
+	    if (object == null)
+	      throw new IllegalArgumentException("Object was null");
+	    SlabOutputStream os = null;
+	    Writer wos = null;
+	    try {
+	    	os = pool.stream(SIZES.estimate(Person.class, object.length));
+	    	wos = new OutputStreamWriter(os, UTF8);
+	    	jsonMapper.writeValue(wos, object);
+	    	final PooledBuffer b = os.toPooledBuffer();
+	    	SIZES.record(Person.class, object.length, b.buffer().readableBytes());
+	    	return b;
+	    } catch (Exception e) {
+	    	if(os!=null) os.toPooledBuffer().release();
+	      throw new RuntimeException(e);
+	    } finally {
+	    	if(wos!=null) try { wos.close(); } catch (Exception x) {/* No Op */}
+	    }
+	  }
+  
   public static final String serializeToString(final Object object) {
 	    if (object == null)
 	      throw new IllegalArgumentException("Object was null");
@@ -234,6 +335,43 @@ public class JSONUnmarshalling {
     }
   }    
 	
+  /**
+   * Deserializes a UTF-8 JSON formatted buffer to a specific class type, feeding the raw bytes
+   * straight to Jackson's byte parser rather than decoding them to chars through a {@link Reader}.
+   * Heap buffers are parsed in place from the backing array. Direct buffers are streamed
+   * as bytes with no char decoding step.
+   * @param json The buffer to deserialize
+   * @param pojo The class type of the object used for deserialization
+   * @return An object of the {@code pojo} type
+   * @throws IllegalArgumentException if the data or class was null or parsing 
+   * failed
+   */
+  public static final <T> T parseToObjectRaw(final ChannelBuffer json, final Class<T> pojo) {
+    if (json == null || json.readableBytes()<2)
+      throw new IllegalArgumentException("Incoming data was null or empty");
+    if (pojo == null)
+      throw new IllegalArgumentException("Missing class type");
+    if(json.hasArray()) {
+    	try {
+    		final int len = json.readableBytes();
+    		final T t = jsonMapper.readValue(json.array(), json.arrayOffset() + json.readerIndex(), len, pojo);
+    		json.skipBytes(len);
+    		return t;
+    	} catch (Exception e) {
+    		throw new RuntimeException(e);
+    	}
+    }
+    InputStream i = null;
+    try {
+    	i = new ChannelBufferInputStream(json);
+    	return jsonMapper.readValue(i, pojo);
+    } catch (Exception e) {
+    	throw new RuntimeException(e);
+    } finally {
+    	if(i!=null) try { i.close(); } catch (Exception x) {/* No Op */}
+    }
+  }
+	
 	/**
 	 * Creates a new JSONUnmarshalling
 	 */
@@ -254,12 +392,30 @@ public class JSONUnmarshalling {
 					log("Parsed STRING [%s] to objects: %s", sample, p.length);
 					p = parseToObject(bufferMap.get(sample).duplicate(), Person[].class);
 					log("Parsed BUFFER [%s] to objects: %s", sample, p.length);
+					p = parseToObjectRaw(bufferMap.get(sample).duplicate(), Person[].class);
+					log("Parsed RAW BUFFER [%s] to objects: %s", sample, p.length);
+					p = parseToObjectRaw(HEAP_DATA_BUFFERS.get(sample).duplicate(), Person[].class);
+					log("Parsed RAW HEAP BUFFER [%s] to objects: %s", sample, p.length);
+					p = CODEC.readPersons(bufferMap.get(sample).duplicate());
+					log("Parsed CODEC BUFFER [%s] to objects: %s", sample, p.length);
 					String s = serializeToString(p);
 					log("Serialized to STRING [%s], size: %s", sample, s.length());
+					s = CODEC.writeString(p);
+					log("Serialized to CODEC STRING [%s], size: %s", sample, s.length());
 					ChannelBuffer c = serializeToBuffer(heapFactory, p);
 					log("Serialized to Heap Buffer [%s], size: %s", sample, c.readableBytes());
 					c = serializeToBuffer(directFactory, p);
-					log("Serialized to Direct Buffer [%s], size: %s", sample, c.readableBytes());					
+					log("Serialized to Direct Buffer [%s], size: %s", sample, c.readableBytes());
+					c = serializeToBufferRaw(heapFactory, p);
+					log("Serialized RAW to Heap Buffer [%s], size: %s", sample, c.readableBytes());
+					c = serializeToBufferRaw(directFactory, p);
+					log("Serialized RAW to Direct Buffer [%s], size: %s", sample, c.readableBytes());
+					PooledBuffer pb = serializeToPooledBuffer(heapSlabs, p);
+					log("Serialized to Pooled Heap Buffer [%s], size: %s, slabs: %s", sample, pb.buffer().readableBytes(), pb.slabCount());
+					pb.release();
+					pb = serializeToPooledBuffer(directSlabs, p);
+					log("Serialized to Pooled Direct Buffer [%s], size: %s, slabs: %s", sample, pb.buffer().readableBytes(), pb.slabCount());
+					pb.release();					
 				} catch (Exception ex) {
 					throw new RuntimeException("Failed to process string sample [" + sample + "]", ex);
 				} finally {
@@ -291,9 +447,249 @@ public class JSONUnmarshalling {
   }
   
   
-   public static abstract class Sample {
+  /**
+   * Returns the buffer for the named payload. Payloads are either one of the {@link #DATA} samples,
+   * a generated dataset named {@link #GENERATED_PREFIX} plus a size such as <code>generated-64mb</code>,
+   * or an uncompressed JSON file named {@link #FILE_PREFIX} plus the path. Generated and file datasets are
+   * loaded on first request and retained. {@link BufferType#MAPPED} buffers are views over a memory mapped file.
+   * @param payload The payload name
+   * @param bufferType The type of buffer to return
+   * @return the payload buffer
+   */
+  public static ChannelBuffer sampleBuffer(final String payload, final BufferType bufferType) {
+	  if(bufferType==BufferType.MAPPED) {
+		  return mappedSource(payload).asChannelBuffer();
+	  }
+	  final boolean heap = bufferType==BufferType.HEAP;
+	  if(payload.startsWith(GENERATED_PREFIX) || payload.startsWith(FILE_PREFIX)) {
+		  final String key = bufferType + ":" + payload;
+		  synchronized(LOADED_BUFFERS) {
+			  ChannelBuffer b = LOADED_BUFFERS.get(key);
+			  if(b==null) {
+				  final ChannelBufferFactory factory = heap ? heapFactory : directFactory;
+				  if(payload.startsWith(FILE_PREFIX)) {
+					  final ChannelBuffer mapped = mappedSource(payload).asChannelBuffer().duplicate();
+					  b = factory.getBuffer(mapped.readableBytes());
+					  b.writeBytes(mapped);
+				  } else {
+					  final long size = PersonGenerator.parseSize(payload.substring(GENERATED_PREFIX.length()));
+					  if(size > Integer.MAX_VALUE/2) throw new IllegalArgumentException("Generated payload too large for a ChannelBuffer [" + payload + "]");
+					  b = new PersonGenerator(GENERATOR_SEED).generate(factory, (int)size);
+				  }
+				  LOADED_BUFFERS.put(key, b);
+			  }
+			  return b;
+		  }
+	  }
+	  final ChannelBuffer b = (heap ? HEAP_DATA_BUFFERS : DIRECT_DATA_BUFFERS).get(payload);
+	  if(b==null) throw new IllegalArgumentException("Unknown payload [" + payload + "]");
+	  return b;
+  }
+  
+  /**
+   * Returns the named payload converted to newline delimited JSON, one person per line.
+   * The conversion is done on first request and retained.
+   * @param payload The payload name, as accepted by {@link #sampleBuffer(String, BufferType)}
+   * @param bufferType The type of buffer to return, heap or direct
+   * @return the JSON lines buffer
+   */
+  public static ChannelBuffer ndjsonBuffer(final String payload, final BufferType bufferType) {
+	  if(bufferType==BufferType.MAPPED) throw new IllegalArgumentException("JSON lines payloads are heap or direct only");
+	  final String key = "ndjson:" + bufferType + ":" + payload;
+	  synchronized(LOADED_BUFFERS) {
+		  ChannelBuffer b = LOADED_BUFFERS.get(key);
+		  if(b==null) {
+			  final Person[] persons = deserPersons(sampleBuffer(payload, bufferType).duplicate());
+			  b = CODEC.writeLines(bufferType==BufferType.HEAP ? heapFactory : directFactory, persons);
+			  LOADED_BUFFERS.put(key, b);
+		  }
+		  return b;
+	  }
+  }
+  
+  /**
+   * Returns the named payload re-encoded in the passed wire format.
+   * The encoding is done on first request and retained.
+   * @param payload The payload name, as accepted by {@link #sampleBuffer(String, BufferType)}
+   * @param bufferType The type of buffer to return, heap or direct
+   * @param format The wire format to encode in
+   * @return the encoded buffer
+   */
+  public static ChannelBuffer encodedBuffer(final String payload, final BufferType bufferType, final WireFormat format) {
+	  if(bufferType==BufferType.MAPPED) throw new IllegalArgumentException("Encoded payloads are heap or direct only");
+	  final String key = format + ":" + bufferType + ":" + payload;
+	  synchronized(LOADED_BUFFERS) {
+		  ChannelBuffer b = LOADED_BUFFERS.get(key);
+		  if(b==null) {
+			  final Person[] persons = deserPersons(sampleBuffer(payload, bufferType).duplicate());
+			  b = format.codec.write(bufferType==BufferType.HEAP ? heapFactory : directFactory, persons);
+			  LOADED_BUFFERS.put(key, b);
+		  }
+		  return b;
+	  }
+  }
+  
+  /**
+   * Returns the memory mapped source for the named payload. File payloads are mapped in place.
+   * Samples are decompressed and generated datasets are generated straight to a temp file, which is then mapped.
+   * @param payload The payload name
+   * @return the mapped source
+   */
+  public static MappedJsonSource mappedSource(final String payload) {
+	  synchronized(MAPPED_SOURCES) {
+		  MappedJsonSource source = MAPPED_SOURCES.get(payload);
+		  if(source==null) {
+			  final File f;
+			  if(payload.startsWith(FILE_PREFIX)) {
+				  f = new File(payload.substring(FILE_PREFIX.length()));
+			  } else {
+				  FileOutputStream fos = null;
+				  try {
+					  f = File.createTempFile("json-benchmark-", ".json");
+					  f.deleteOnExit();
+					  if(payload.startsWith(GENERATED_PREFIX)) {
+						  new PersonGenerator(GENERATOR_SEED).generate(f, PersonGenerator.parseSize(payload.substring(GENERATED_PREFIX.length())));
+					  } else {
+						  final ChannelBuffer b = sampleBuffer(payload, BufferType.HEAP).duplicate();
+						  fos = new FileOutputStream(f);
+						  b.readBytes(fos, b.readableBytes());
+					  }
+				  } catch (IOException iex) {
+					  throw new RuntimeException("Failed to write mapped file for payload [" + payload + "]", iex);
+				  } finally {
+					  if(fos!=null) try { fos.close(); } catch (Exception x) {/* No Op */}
+				  }
+			  }
+			  source = new MappedJsonSource(f);
+			  MAPPED_SOURCES.put(payload, source);
+		  }
+		  return source;
+	  }
+  }
+  
+  /**
+   * Opens a pull style reader over a buffer containing a JSON array of persons
+   * which binds one person at a time. The caller should close the reader if it is not fully consumed.
+   * @param json The buffer to read from
+   * @return the stream reader
+   */
+  public static PersonStreamReader streamPersons(final ChannelBuffer json) {
+	  return new PersonStreamReader(jsonMapper, json);
+  }
+  
+  /**
+   * Opens a pull style reader over a stream containing a JSON array of persons which binds one person at a time.
+   * The bytes are fed directly to the UTF-8 byte parser. Closing the reader closes the stream.
+   * @param json The stream to read from
+   * @return the stream reader
+   */
+  public static PersonStreamReader streamPersons(final InputStream json) {
+	  return new PersonStreamReader(jsonMapper, json, false);
+  }
+  
+  /**
+   * Streams the persons in a buffer containing a JSON array of persons to the passed handler, one at a time
+   * @param json The buffer to read from
+   * @param handler The handler each person is passed to
+   * @return the number of persons passed to the handler
+   */
+  public static int streamPersons(final ChannelBuffer json, final PersonHandler handler) {
+	  final PersonStreamReader reader = new PersonStreamReader(jsonMapper, json);
+	  try {
+		  return reader.read(handler);
+	  } finally {
+		  reader.close();
+	  }
+  }
+  
+  
+   /**
+    * The buffer types the samples are loaded into
+    */
+   public static enum BufferType {
+	   /** Heap channel buffers */
+	   HEAP,
+	   /** Direct channel buffers */
+	   DIRECT,
+	   /** Direct channel buffers over a memory mapped file */
+	   MAPPED;
+   }
+   
+   /**
+    * The direction of a matrix benchmark
+    */
+   public static enum Direction {
+	   /** JSON to pojos */
+	   READ,
+	   /** Pojos to JSON */
+	   WRITE;
+   }
+   
+   /**
+    * The JSON source or sink of a matrix benchmark
+    */
+   public static enum Source {
+	   /** Read from or write to a String */
+	   STRING,
+	   /** Read from or write to a ChannelBuffer */
+	   BUFFER;
+   }
+   
+   /**
+    * How an egress benchmark gets persons into a buffer
+    */
+   public static enum WritePath {
+	   /** Write to a String, then encode it into the buffer */
+	   STRING,
+	   /** Write chars through an OutputStreamWriter over the buffer */
+	   WRITER,
+	   /** Write bytes through a UTF-8 generator over the buffer */
+	   RAW;
+   }
+   
+   /**
+    * <p>Title: Access</p>
+    * <p>Description: The fields read from each person by the lazy view benchmarks</p>
+    */
+   public static enum Access {
+	   /** Read the name */
+	   ONE,
+	   /** Read the name, email and guid */
+	   THREE,
+	   /** Read every field */
+	   ALL;
+   }
+  
+	/**
+	 * <p>Title: Sample</p>
+	 * <p>Description: The payload under test. Besides the {@link #DATA} samples, <b><code>payload</code></b> accepts
+	 * generated datasets such as <code>-p payload=generated-64mb</code>.</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class Sample {
+		@Param({"HEAP", "DIRECT"})
+		BufferType bufferType;
+		@Param({"sample-1kb.json.gz", "sample-56kb.json.gz", "sample-118kb.json.gz", "sample-614kb.json.gz"})
+		String payload;
+		ChannelBuffer sampleBuff = null;
+		Person[] pojos = null;
+		ChannelBufferFactory cbf = null;
+		SlabPool pool = null;
+		/** The number of persons in the payload */
+		int records = 0;
+		/** The size of the payload in bytes */
+		int bytes = 0;
+		
 		@Setup(Level.Trial)
 		public void setup() {
+			final boolean heap = bufferType==BufferType.HEAP;
+			sampleBuff = sampleBuffer(payload, bufferType);
+			pojos = deserPersons(sampleBuff);
+			// writes for mapped payloads go to direct buffers
+			cbf = heap ? heapFactory : directFactory;
+			pool = heap ? heapSlabs : directSlabs;
+			records = pojos.length;
+			bytes = sampleBuff.readableBytes();
 			System.gc();
 			totalParsed = 0;
 		}
@@ -301,62 +697,430 @@ public class JSONUnmarshalling {
 	    public void clear() {
 	    	/* No Op */
 	    }
-   }
-  
-	@State(Scope.Group)
-	public static class Heap56Kb extends Sample {
-		final ChannelBuffer sampleBuff = HEAP_DATA_BUFFERS.get("sample-56kb.json.gz");
-		final Person[] pojos = deserPersons(sampleBuff);
-		final ChannelBufferFactory cbf = heapFactory;
 	}
 	
-	@State(Scope.Group)
-	public static class Direct56Kb extends Sample {
-		final ChannelBuffer sampleBuff = DIRECT_DATA_BUFFERS.get("sample-56kb.json.gz");
-		final Person[] pojos = deserPersons(sampleBuff);
-		final ChannelBufferFactory cbf = directFactory;
+	@State(Scope.Benchmark)
+	public static class Matrix extends Sample {
+		@Param({"READ", "WRITE"})
+		Direction direction;
+		@Param({"STRING", "BUFFER"})
+		Source source;
 	}
 	
-	@State(Scope.Group)
-	public static class Heap118Kb extends Sample {
-		final ChannelBuffer sampleBuff = HEAP_DATA_BUFFERS.get("sample-118kb.json.gz");
-		final Person[] pojos = deserPersons(sampleBuff);
-		final ChannelBufferFactory cbf = heapFactory;
+	/**
+	 * <p>Title: Egress</p>
+	 * <p>Description: The payload written to a buffer along each {@link WritePath}, so the cost of producing chars
+	 * and encoding them separately shows against the UTF-8 generator. The paths write the same bytes for the bundled samples,
+	 * but payloads with characters outside the Basic Multilingual Plane come out longer on the RAW path, see
+	 * {@link JSONUnmarshalling#serializeToBufferRaw(ChannelBufferFactory, Person...)}.</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class Egress extends Sample {
+		@Param({"STRING", "WRITER", "RAW"})
+		WritePath path;
+	}
+	
+	/**
+	 * <p>Title: LazySample</p>
+	 * <p>Description: The payload read through lazy views or full binding, touching the fields selected by <b><code>access</code></b></p>
+	 */
+	@State(Scope.Benchmark)
+	public static class LazySample extends Sample {
+		@Param({"ONE", "THREE", "ALL"})
+		Access access;
 	}
 	
-	@State(Scope.Group)
-	public static class Direct118Kb extends Sample {
-		final ChannelBuffer sampleBuff = DIRECT_DATA_BUFFERS.get("sample-118kb.json.gz");
-		final Person[] pojos = deserPersons(sampleBuff);
-		final ChannelBufferFactory cbf = directFactory;
+	/**
+	 * <p>Title: ProjectionSample</p>
+	 * <p>Description: The payload read through a {@link PersonProjection} of the comma separated <b><code>fields</code></b>.
+	 * Compare the allocation reported by the {@link JVMSummaryProfiler} with {@link JSONUnmarshalling#codecRead(Sample, Records, Blackhole)}.</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class ProjectionSample extends Sample {
+		@Param({"guid,age,isActive", "name,email,guid"})
+		String fields;
+		PersonProjection projection = null;
+		
+		@Override
+		@Setup(Level.Trial)
+		public void setup() {
+			super.setup();
+			projection = new PersonProjection(jsonMapper, fields.split(","));
+		}
 	}
 	
-	@State(Scope.Group)
-	public static class Heap614Kb extends Sample {
-		final ChannelBuffer sampleBuff = HEAP_DATA_BUFFERS.get("sample-614kb.json.gz");
-		final Person[] pojos = deserPersons(sampleBuff);
-		final ChannelBufferFactory cbf = heapFactory;
+	/**
+	 * <p>Title: Encoded</p>
+	 * <p>Description: The payload re-encoded in each {@link WireFormat}, read from or written to heap or direct buffers.
+	 * The encoded size of each format is logged at setup.</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class Encoded extends Sample {
+		@Param({"JSON", "SMILE", "CBOR", "XML"})
+		WireFormat format;
+		@Param({"READ", "WRITE"})
+		Direction direction;
+		ChannelBuffer encodedBuff = null;
+		/** The size of the encoded payload in bytes */
+		int encodedBytes = 0;
+		
+		@Override
+		@Setup(Level.Trial)
+		public void setup() {
+			super.setup();
+			encodedBuff = encodedBuffer(payload, bufferType, format);
+			encodedBytes = encodedBuff.readableBytes();
+			final int json = encodedBuffer(payload, bufferType, WireFormat.JSON).readableBytes();
+			log("\n\tPayload [%s] as %s: %s bytes, %s bytes/person, %.1f%% of JSON", payload, format, encodedBytes, encodedBytes / records, encodedBytes * 100D / json);
+		}
 	}
 	
-	@State(Scope.Group)
-	public static class Direct614Kb extends Sample {
-		final ChannelBuffer sampleBuff = DIRECT_DATA_BUFFERS.get("sample-614kb.json.gz");
-		final Person[] pojos = deserPersons(sampleBuff);
-		final ChannelBufferFactory cbf = directFactory;
+	/**
+	 * <p>Title: Flyweights</p>
+	 * <p>Description: The payload transcoded to {@link PersonFlyweight} records in a heap or direct buffer</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class Flyweights extends Sample {
+		ChannelBuffer recordsBuff = null;
+		/** The guid of the last person, as UTF-8 bytes */
+		byte[] lastGuidBytes = null;
+		/** The guid of the last person */
+		String lastGuid = null;
+		
+		@Override
+		@Setup(Level.Trial)
+		public void setup() {
+			super.setup();
+			final ChannelBuffer tmp = ChannelBuffers.dynamicBuffer(bytes);
+			new PersonRecordWriter(jsonMapper.getFactory()).transcode(sampleBuff, tmp);
+			recordsBuff = cbf.getBuffer(tmp.readableBytes());
+			recordsBuff.writeBytes(tmp);
+			lastGuid = pojos[pojos.length-1].guid;
+			lastGuidBytes = lastGuid.getBytes(UTF8);
+			log("\n\tPayload [%s] as records: %s bytes, %.1f%% of JSON", payload, recordsBuff.readableBytes(), recordsBuff.readableBytes() * 100D / bytes);
+		}
 	}
-
-	@State(Scope.Group)
-	public static class Heap1Kb extends Sample {
-		final ChannelBuffer sampleBuff = HEAP_DATA_BUFFERS.get("sample-1kb.json.gz");
-		final Person[] pojos = deserPersons(sampleBuff);
-		final ChannelBufferFactory cbf = heapFactory;
+	
+	/**
+	 * <p>Title: RecordOutput</p>
+	 * <p>Description: Per thread record writer and output buffer for the transcoding benchmark</p>
+	 */
+	@State(Scope.Thread)
+	public static class RecordOutput {
+		PersonRecordWriter writer = new PersonRecordWriter(jsonMapper.getFactory());
+		ChannelBuffer out = null;
+		PersonFlyweight flyweight = new PersonFlyweight();
+		
+		ChannelBuffer out(final Sample sample) {
+			if(out==null) out = ChannelBuffers.dynamicBuffer(sample.bytes, sample.cbf);
+			out.clear();
+			return out;
+		}
+	}
+	
+	/**
+	 * <p>Title: Frames</p>
+	 * <p>Description: The payload as a stream of length prefixed person frames written by a {@link PersonFrameEncoder},
+	 * cut into <b><code>chunkSize</code></b> byte buffers the way socket reads deliver it: 1460 is one Ethernet MSS,
+	 * 16384 and 65536 are typical read buffer sizes. Frames straddle chunk boundaries.</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class Frames extends Sample {
+		@Param({"1460", "16384", "65536"})
+		int chunkSize;
+		ChannelBuffer[] chunks = null;
+		/** The size of the framed stream in bytes */
+		int frameBytes = 0;
+		
+		@Override
+		@Setup(Level.Trial)
+		public void setup() {
+			super.setup();
+			final EncoderEmbedder<ChannelBuffer> encoder = new EncoderEmbedder<ChannelBuffer>(cbf, new PersonFrameEncoder(CODEC));
+			final ChannelBuffer stream = ChannelBuffers.dynamicBuffer(bytes + records * 4);
+			for(Person p: pojos) {
+				encoder.offer(p);
+				stream.writeBytes(encoder.poll());
+			}
+			encoder.finish();
+			frameBytes = stream.readableBytes();
+			chunks = new ChannelBuffer[(frameBytes + chunkSize - 1) / chunkSize];
+			for(int i = 0; i < chunks.length; i++) {
+				final int len = Math.min(chunkSize, stream.readableBytes());
+				chunks[i] = cbf.getBuffer(len);
+				stream.readBytes(chunks[i], len);
+			}
+		}
+	}
+	
+	/**
+	 * <p>Title: Pipeline</p>
+	 * <p>Description: Per thread embedded pipelines with the person frame decoder and encoder. The channels use
+	 * the payload's buffer factory, so the decoder's cumulation buffers are heap or direct to match.</p>
+	 */
+	@State(Scope.Thread)
+	public static class Pipeline {
+		DecoderEmbedder<Person> decoder = null;
+		EncoderEmbedder<ChannelBuffer> encoder = null;
+		
+		DecoderEmbedder<Person> decoder(final Sample sample) {
+			if(decoder==null) decoder = new DecoderEmbedder<Person>(sample.cbf, new PersonFrameDecoder(CODEC));
+			return decoder;
+		}
+		
+		EncoderEmbedder<ChannelBuffer> encoder(final Sample sample) {
+			if(encoder==null) encoder = new EncoderEmbedder<ChannelBuffer>(sample.cbf, new PersonFrameEncoder(CODEC));
+			return encoder;
+		}
+	}
+	
+	/**
+	 * <p>Title: Fragments</p>
+	 * <p>Description: The payload cut into <b><code>chunkSize</code></b> byte buffers and wrapped, not copied, into one
+	 * {@link CompositeChannelBuffer}, the way fragmented reads are gathered. Tokens and multi-byte characters straddle
+	 * the chunk boundaries. The composite is built directly so a payload that fits in one chunk is still a composite.</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class Fragments extends Sample {
+		@Param({"64", "1024", "16384", "65536"})
+		int chunkSize;
+		ChannelBuffer composite = null;
+		
+		@Override
+		@Setup(Level.Trial)
+		public void setup() {
+			super.setup();
+			final ChannelBuffer source = sampleBuff.duplicate();
+			final ChannelBuffer[] chunks = new ChannelBuffer[(bytes + chunkSize - 1) / chunkSize];
+			for(int i = 0; i < chunks.length; i++) {
+				final int len = Math.min(chunkSize, source.readableBytes());
+				chunks[i] = cbf.getBuffer(len);
+				source.readBytes(chunks[i], len);
+			}
+			composite = new CompositeChannelBuffer(cbf.getDefaultOrder(), Arrays.asList(chunks), false);
+		}
+	}
+	
+	/**
+	 * <p>Title: Lines</p>
+	 * <p>Description: The payload in newline delimited JSON form. Lines are bound on the calling thread
+	 * when <b><code>workers</code></b> is zero, otherwise in batches of <b><code>batchSize</code></b> lines on a fixed pool.</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class Lines extends Sample {
+		@Param({"0", "4"})
+		int workers;
+		@Param({"128"})
+		int batchSize;
+		ChannelBuffer linesBuff = null;
+		NdjsonPersonReader reader = null;
+		/** The size of the JSON lines payload in bytes */
+		int lineBytes = 0;
+		
+		@Override
+		@Setup(Level.Trial)
+		public void setup() {
+			super.setup();
+			linesBuff = ndjsonBuffer(payload, bufferType);
+			lineBytes = linesBuff.readableBytes();
+			reader = new NdjsonPersonReader(CODEC, workers==0 ? null : Executors.newFixedThreadPool(workers), batchSize);
+		}
+		
+		@TearDown(Level.Trial)
+		public void shutdown() {
+			if(reader.getExecutor()!=null) reader.getExecutor().shutdownNow();
+		}
+	}
+	
+	/**
+	 * <p>Title: Input</p>
+	 * <p>Description: A read-only payload in heap, direct or memory mapped buffers</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class Input {
+		@Param({"HEAP", "DIRECT", "MAPPED"})
+		BufferType bufferType;
+		@Param({"sample-1kb.json.gz", "sample-56kb.json.gz", "sample-118kb.json.gz", "sample-614kb.json.gz"})
+		String payload;
+		ChannelBuffer sampleBuff = null;
+		
+		@Setup(Level.Trial)
+		public void setup() {
+			sampleBuff = sampleBuffer(payload, bufferType);
+			System.gc();
+		}
+	}
+	
+	/**
+	 * <p>Title: MappedInput</p>
+	 * <p>Description: A payload streamed from a memory mapped file one window at a time. Unlike {@link Input}
+	 * this supports files larger than 2GB.</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class MappedInput {
+		@Param({"sample-614kb.json.gz"})
+		String payload;
+		MappedJsonSource source = null;
+		
+		@Setup(Level.Trial)
+		public void setup() {
+			source = mappedSource(payload);
+			System.gc();
+		}
+	}
+	
+	/**
+	 * <p>Title: LargeInput</p>
+	 * <p>Description: A single large generated document, parsed once per invocation</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class LargeInput {
+		@Param({"HEAP", "DIRECT"})
+		BufferType bufferType;
+		@Param({"generated-16mb", "generated-64mb"})
+		String payload;
+		ChannelBuffer sampleBuff = null;
+		/** The number of persons in the payload */
+		int records = 0;
+		/** The size of the payload in bytes */
+		int bytes = 0;
+		
+		@Setup(Level.Trial)
+		public void setup() {
+			sampleBuff = sampleBuffer(payload, bufferType);
+			records = JsonBoundaryScanner.elementBounds(sampleBuff).length / 2;
+			bytes = sampleBuff.readableBytes();
+			System.gc();
+		}
+	}
+	
+	/**
+	 * <p>Title: ParallelInput</p>
+	 * <p>Description: A large generated document parsed by a {@link ParallelPersonParser} with a fork join pool of <b><code>parallelism</code></b> threads</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class ParallelInput extends LargeInput {
+		@Param({"1", "2", "4", "8"})
+		int parallelism;
+		ParallelPersonParser parser = null;
+		
+		@Override
+		@Setup(Level.Trial)
+		public void setup() {
+			super.setup();
+			parser = new ParallelPersonParser(CODEC, new ForkJoinPool(parallelism), ParallelPersonParser.DEFAULT_MIN_BATCH);
+		}
+		
+		@TearDown(Level.Trial)
+		public void shutdown() {
+			parser.getPool().shutdownNow();
+		}
+	}
+	
+	/**
+	 * <p>Title: CacheInput</p>
+	 * <p>Description: A {@link PersonCache} holding <b><code>cachePercent</code></b> percent of the payload's persons,
+	 * loading misses from the heap copy of the payload, and a skewed sequence of guids to look up.
+	 * Run with <code>-prof com.heliosapm.benchmarks.json.JVMSummaryProfiler</code> to compare the GC impact of
+	 * cached lookups against re-parsing.</p>
+	 */
+	@State(Scope.Benchmark)
+	public static class CacheInput {
+		/** The number of guids in the lookup sequence */
+		public static final int KEY_COUNT = 1024;
+		@Param({"sample-118kb.json.gz", "sample-614kb.json.gz"})
+		String payload;
+		@Param({"100", "50", "10"})
+		int cachePercent;
+		/** The JSON of each person keyed by guid, sliced from the heap payload */
+		final Map<String, ChannelBuffer> jsonByGuid = new HashMap<String, ChannelBuffer>();
+		/** The guids to look up, in order */
+		String[] keys = null;
+		PersonCache cache = null;
+		
+		@Setup(Level.Trial)
+		public void setup() {
+			final ChannelBuffer heap = sampleBuffer(payload, BufferType.HEAP);
+			final Person[] pojos = deserPersons(heap);
+			final int[] bounds = JsonBoundaryScanner.elementBounds(heap);
+			for(int i = 0; i < pojos.length; i++) {
+				jsonByGuid.put(pojos[i].guid, heap.slice(bounds[i*2], bounds[i*2+1] - bounds[i*2]));
+			}
+			// squaring a uniform draw favours the low indexes so some persons are hot
+			final Random r = new Random(GENERATOR_SEED);
+			keys = new String[KEY_COUNT];
+			for(int i = 0; i < KEY_COUNT; i++) {
+				final double d = r.nextDouble();
+				keys[i] = pojos[(int)(pojos.length * d * d)].guid;
+			}
+			cache = new PersonCache(jsonMapper.getFactory(), new PersonCache.PersonSource() {
+				@Override
+				public ChannelBuffer load(final String guid) {
+					final ChannelBuffer json = jsonByGuid.get(guid);
+					return json==null ? null : json.duplicate();
+				}
+			}, Math.max(1, pojos.length * cachePercent / 100));
+			System.gc();
+		}
+		
+		@Setup(Level.Iteration)
+		public void resetStats() {
+			cache.resetStats();
+		}
+		
+		@TearDown(Level.Iteration)
+		public void logStats() {
+			if(cache.getHits() + cache.getMisses() > 0) log("\n\t%s, off-heap: %s bytes", cache, cache.getOffHeapBytes());
+		}
+	}
+	
+	/**
+	 * <p>Title: KeyCursor</p>
+	 * <p>Description: Per thread position in the {@link CacheInput} key sequence for single lookup benchmarks</p>
+	 */
+	@State(Scope.Thread)
+	public static class KeyCursor {
+		int position = 0;
+		
+		String next(final String[] keys) {
+			final String key = keys[position];
+			position = (position + 1) % keys.length;
+			return key;
+		}
 	}
 	
-	@State(Scope.Group)
-	public static class Direct1Kb extends Sample {
-		final ChannelBuffer sampleBuff = DIRECT_DATA_BUFFERS.get("sample-1kb.json.gz");
-		final Person[] pojos = deserPersons(sampleBuff);
-		final ChannelBufferFactory cbf = directFactory;
+	/**
+	 * <p>Title: Records</p>
+	 * <p>Description: Per thread counters of the persons and bytes processed, reported as secondary
+	 * throughput results since the ops per invocation count documents, not persons. Both are also
+	 * reported to the {@link WorkCounters}, which the {@link JVMSummaryProfiler} reads to normalize
+	 * allocation per input byte and per person.</p>
+	 */
+	@AuxCounters
+	@State(Scope.Thread)
+	public static class Records {
+		public long records = 0;
+		public long bytes = 0;
+		
+		@Setup(Level.Iteration)
+		public void reset() {
+			records = 0;
+			bytes = 0;
+		}
+		
+		void add(final int recordsPerDoc, final int bytesPerDoc) {
+			records += (long)loopsPerOp * recordsPerDoc;
+			bytes += (long)loopsPerOp * bytesPerDoc;
+			WorkCounters.addInputBytes((long)loopsPerOp * bytesPerDoc);
+			WorkCounters.addRecords((long)loopsPerOp * recordsPerDoc);
+		}
+		
+		void addPass(final long recordCount, final long byteCount) {
+			records += recordCount;
+			bytes += byteCount;
+			WorkCounters.addInputBytes(byteCount);
+			WorkCounters.addRecords(recordCount);
+		}
 	}
 	
   
@@ -382,341 +1146,688 @@ public class JSONUnmarshalling {
 			}  
     }
     
+    public void rawReadTest(final ChannelBuffer buffer, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(parseToObjectRaw(buffer, Person[].class).length);
+				buffer.resetReaderIndex();
+			}  
+    }
+    
+    public void codecReadTest(final ChannelBuffer buffer, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(CODEC.readPersons(buffer).length);
+				buffer.resetReaderIndex();
+			}  
+    }
+    
+    public void canonicalReadTest(final ChannelBuffer buffer, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(CANONICAL_CODEC.readPersons(buffer).length);
+				buffer.resetReaderIndex();
+			}  
+    }
+    
+    public void compactReadTest(final ChannelBuffer buffer, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(COMPACT.readPersons(buffer).length);
+				buffer.resetReaderIndex();
+			}  
+    }
+    
+    public void streamCodecReadTest(final ChannelBuffer buffer, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(STREAM_CODEC.readPersons(buffer).length);
+				buffer.resetReaderIndex();
+			}  
+    }
+    
+    public void bufferStreamReadTest(final ChannelBuffer buffer, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		final PersonStreamReader reader = streamPersons(buffer);
+    		while(reader.hasNext()) {
+    			blackHole.consume(reader.next());
+    		}
+    		blackHole.consume(reader.getCount());
+    		buffer.resetReaderIndex();
+    	}
+    }
+    
+    public void bufferStreamFirstTest(final ChannelBuffer buffer, final Blackhole blackHole) {
+    	final PersonHandler handler = new PersonHandler() {
+    		@Override
+    		public boolean onPerson(final int index, final Person person) {
+    			blackHole.consume(person);
+    			return false;
+    		}
+    	};
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		blackHole.consume(streamPersons(buffer, handler));
+    		buffer.resetReaderIndex();
+    	}
+    }
+    
+    public int streamPassTest(final InputStream is, final Blackhole blackHole) {
+    	final PersonStreamReader reader = streamPersons(is);
+    	try {
+    		while(reader.hasNext()) {
+    			blackHole.consume(reader.next());
+    		}
+    		return reader.getCount();
+    	} finally {
+    		reader.close();
+    	}
+    }
+    
+    public void projectedReadTest(final ChannelBuffer buffer, final PersonProjection projection, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(projection.read(buffer));
+			}  
+    }
+    
+    public void lazyReadTest(final ChannelBuffer buffer, final Access access, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		for(LazyPerson p: LAZY.index(buffer)) {
+    			switch(access) {
+    				case ALL:
+    					blackHole.consume(p.toPerson());
+    					break;
+    				case THREE:
+    					blackHole.consume(p.getName());
+    					blackHole.consume(p.getEmail());
+    					blackHole.consume(p.getGuid());
+    					break;
+    				case ONE:
+    					blackHole.consume(p.getName());
+    					break;
+    			}
+    		}
+    	}
+    }
+    
+    public void boundReadTest(final ChannelBuffer buffer, final Access access, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		for(Person p: CODEC.readPersons(buffer)) {
+    			switch(access) {
+    				case ALL:
+    					blackHole.consume(p);
+    					break;
+    				case THREE:
+    					blackHole.consume(p.name);
+    					blackHole.consume(p.email);
+    					blackHole.consume(p.guid);
+    					break;
+    				case ONE:
+    					blackHole.consume(p.name);
+    					break;
+    			}
+    		}
+    		buffer.resetReaderIndex();
+    	}
+    }
+    
+    public void formatReadTest(final ChannelBuffer buffer, final PersonCodec codec, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(codec.readPersons(buffer).length);
+				buffer.resetReaderIndex();
+			}  
+    }
+    
+    public void transcodeTest(final ChannelBuffer buffer, final RecordOutput output, final Sample sample, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		final ChannelBuffer out = output.out(sample);
+				blackHole.consume(output.writer.transcode(buffer, out));
+				blackHole.consume(out.writerIndex());
+			}  
+    }
+    
+    public void recordScanTest(final ChannelBuffer records, final PersonFlyweight fw, final Blackhole blackHole) {
+    	final int end = records.writerIndex();
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		long ages = 0, friendIds = 0;
+    		int active = 0;
+    		for(int offset = records.readerIndex(); offset < end; offset = fw.next()) {
+    			fw.wrap(records, offset);
+    			ages += fw.getAge();
+    			if(fw.isActive()) active++;
+    			for(int f = fw.getFriendCount()-1; f >= 0; f--) {
+    				friendIds += fw.getFriendId(f);
+    			}
+    		}
+    		blackHole.consume(ages);
+    		blackHole.consume(active);
+    		blackHole.consume(friendIds);
+    	}
+    }
+    
+    public void pojoScanTest(final Person[] people, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		long ages = 0, friendIds = 0;
+    		int active = 0;
+    		for(Person p: people) {
+    			ages += p.age;
+    			if(p.active) active++;
+    			if(p.friends!=null) {
+    				for(Friend f: p.friends) {
+    					friendIds += f.id;
+    				}
+    			}
+    		}
+    		blackHole.consume(ages);
+    		blackHole.consume(active);
+    		blackHole.consume(friendIds);
+    	}
+    }
+    
+    public void recordFindTest(final ChannelBuffer records, final PersonFlyweight fw, final byte[] guid, final Blackhole blackHole) {
+    	final int end = records.writerIndex();
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		int found = -1;
+    		for(int offset = records.readerIndex(); offset < end; offset = fw.next()) {
+    			if(fw.wrap(records, offset).stringEquals(PersonFlyweight.GUID, guid)) {
+    				found = offset;
+    				break;
+    			}
+    		}
+    		blackHole.consume(found);
+    	}
+    }
+    
+    public void pojoFindTest(final Person[] people, final String guid, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		int found = -1;
+    		for(int i = 0; i < people.length; i++) {
+    			if(guid.equals(people[i].guid)) {
+    				found = i;
+    				break;
+    			}
+    		}
+    		blackHole.consume(found);
+    	}
+    }
+    
+    public void cacheLookupTest(final PersonCache cache, final String[] keys, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		for(String key: keys) {
+    			blackHole.consume(cache.get(key));
+    		}
+    	}
+    }
+    
+    public void reparseLookupTest(final Map<String, ChannelBuffer> jsonByGuid, final String[] keys, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+    		for(String key: keys) {
+    			blackHole.consume(CODEC.readPerson(jsonByGuid.get(key).duplicate()));
+    		}
+    	}
+    }
+    
+    public void ndjsonReadTest(final ChannelBuffer buffer, final NdjsonPersonReader reader, final Blackhole blackHole) {
+    	for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(reader.readAll(buffer).length);
+			}  
+    }
+    
     public void stringWriteTest(final Person[] people, final ChannelBufferFactory factory, final Blackhole blackHole) {
 			for(int x = 0; x < loopsPerOp; x++) {
 				blackHole.consume(serializeToString(people));				
 			}
     }
     
+    public void codecStringWriteTest(final Person[] people, final ChannelBufferFactory factory, final Blackhole blackHole) {
+			for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(CODEC.writeString(people));				
+			}
+    }
+    
+    public void codecBufferWriteTest(final Person[] people, final ChannelBufferFactory factory, final Blackhole blackHole) {
+    	codecBufferWriteTest(people, factory, CODEC, blackHole);
+    }
+    
+    public void codecBufferWriteTest(final Person[] people, final ChannelBufferFactory factory, final PersonCodec codec, final Blackhole blackHole) {
+			for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(codec.write(factory, people));				
+			}
+    }
+    
+    public void streamCodecWriteTest(final Person[] people, final ChannelBufferFactory factory, final Blackhole blackHole) {
+			for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(STREAM_CODEC.write(factory, people));				
+			}
+    }
+    
+    public void pooledBufferWriteTest(final Person[] people, final SlabPool pool, final Blackhole blackHole) {
+			for(int x = 0; x < loopsPerOp; x++) {
+				final PooledBuffer b = serializeToPooledBuffer(pool, people);
+				blackHole.consume(b.buffer());
+				b.release();
+			}
+    }
+    
+    public void ndjsonWriteTest(final Person[] people, final ChannelBufferFactory factory, final Blackhole blackHole) {
+			for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(CODEC.writeLines(factory, people));				
+			}
+    }
+    
     public void bufferWriteTest(final Person[] people, final ChannelBufferFactory factory, final Blackhole blackHole) {
 			for(int x = 0; x < loopsPerOp; x++) {
 				blackHole.consume(serializeToBuffer(factory, people));				
 			}
     }
     
+    public void rawWriteTest(final Person[] people, final ChannelBufferFactory factory, final Blackhole blackHole) {
+			for(int x = 0; x < loopsPerOp; x++) {
+				blackHole.consume(serializeToBufferRaw(factory, people));				
+			}
+    }
+    
+    public void stringBufferWriteTest(final Person[] people, final ChannelBufferFactory factory, final Blackhole blackHole) {
+			for(int x = 0; x < loopsPerOp; x++) {
+				final byte[] bytes = serializeToString(people).getBytes(UTF8);
+				final ChannelBuffer b = factory.getBuffer(bytes.length);
+				b.writeBytes(bytes);
+				blackHole.consume(b);
+			}
+    }
+    
     
-    @Group("DirectStringRead1Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 1)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectStringRead1Kb(final Direct1Kb sample, final Blackhole blackhole) {
-    	stringReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void matrix(final Matrix sample, final Records records, final Blackhole blackhole) {
+    	if(sample.direction==Direction.READ) {
+    		if(sample.source==Source.STRING) {
+    			stringReadTest(sample.sampleBuff.duplicate(), blackhole);
+    		} else {
+    			bufferReadTest(sample.sampleBuff.duplicate(), blackhole);
+    		}
+    	} else {
+    		if(sample.source==Source.STRING) {
+    			stringWriteTest(sample.pojos, sample.cbf, blackhole);
+    		} else {
+    			bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    		}
+    	}
+    	records.add(sample.records, sample.bytes);
     }
     
-    
-    
-    
-    @Group("DirectBufferRead1Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 1)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectBufferRead1Kb(final Direct1Kb sample, final Blackhole blackhole) {
-    	bufferReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void egressWrite(final Egress sample, final Records records, final Blackhole blackhole) {
+    	switch(sample.path) {
+    		case STRING:
+    			stringBufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    			break;
+    		case WRITER:
+    			bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    			break;
+    		default:
+    			rawWriteTest(sample.pojos, sample.cbf, blackhole);
+    	}
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("HeapStringRead1Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 1)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapStringRead1Kb(final Heap1Kb sample, final Blackhole blackhole) {
-    	stringReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void rawRead(final Sample sample, final Records records, final Blackhole blackhole) {
+    	rawReadTest(sample.sampleBuff.duplicate(), blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("HeapBufferRead1Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 1)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapBufferRead1Kb(final Heap1Kb sample, final Blackhole blackhole) {
-    	bufferReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void streamRead(final Sample sample, final Records records, final Blackhole blackhole) {
+    	bufferStreamReadTest(sample.sampleBuff.duplicate(), blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    
-    @Group("DirectStringRead56Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 82)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectStringRead56Kb(final Direct56Kb sample, final Blackhole blackhole) {
-    	stringReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void streamReadFirst(final Sample sample, final Records records, final Blackhole blackhole) {
+    	bufferStreamFirstTest(sample.sampleBuff.duplicate(), blackhole);
+    	records.add(1, 0);
     }
     
-    @Group("DirectBufferRead56Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 82)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectBufferRead56Kb(final Direct56Kb sample, final Blackhole blackhole) {
-    	bufferReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void codecRead(final Sample sample, final Records records, final Blackhole blackhole) {
+    	codecReadTest(sample.sampleBuff.duplicate(), blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("HeapStringRead56Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 82)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapStringRead56Kb(final Heap56Kb sample, final Blackhole blackhole) {
-    	stringReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void streamCodecRead(final Sample sample, final Records records, final Blackhole blackhole) {
+    	streamCodecReadTest(sample.sampleBuff.duplicate(), blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("HeapBufferRead56Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 82)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapBufferRead56Kb(final Heap56Kb sample, final Blackhole blackhole) {
-    	bufferReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void canonicalRead(final Sample sample, final Records records, final Blackhole blackhole) {
+    	canonicalReadTest(sample.sampleBuff.duplicate(), blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("DirectStringRead118Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 171)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectStringRead118Kb(final Direct118Kb sample, final Blackhole blackhole) {
-    	stringReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void compactRead(final Sample sample, final Records records, final Blackhole blackhole) {
+    	compactReadTest(sample.sampleBuff.duplicate(), blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("DirectBufferRead118Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 171)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectBufferRead118Kb(final Direct118Kb sample, final Blackhole blackhole) {
-    	bufferReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void codecStringWrite(final Sample sample, final Records records, final Blackhole blackhole) {
+    	codecStringWriteTest(sample.pojos, sample.cbf, blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("HeapStringRead118Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 171)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapStringRead118Kb(final Heap118Kb sample, final Blackhole blackhole) {
-    	stringReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void codecBufferWrite(final Sample sample, final Records records, final Blackhole blackhole) {
+    	codecBufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("HeapBufferRead118Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 171)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapBufferRead118Kb(final Heap118Kb sample, final Blackhole blackhole) {
-    	bufferReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void streamCodecWrite(final Sample sample, final Records records, final Blackhole blackhole) {
+    	streamCodecWriteTest(sample.pojos, sample.cbf, blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("DirectStringRead614Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 888)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectStringRead614Kb(final Direct614Kb sample, final Blackhole blackhole) {
-    	stringReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void pooledBufferWrite(final Sample sample, final Records records, final Blackhole blackhole) {
+    	pooledBufferWriteTest(sample.pojos, sample.pool, blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("DirectBufferRead614Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 888)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectBufferRead614Kb(final Direct614Kb sample, final Blackhole blackhole) {
-    	bufferReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void formatMatrix(final Encoded sample, final Records records, final Blackhole blackhole) {
+    	if(sample.direction==Direction.READ) {
+    		formatReadTest(sample.encodedBuff.duplicate(), sample.format.codec, blackhole);
+    	} else {
+    		codecBufferWriteTest(sample.pojos, sample.cbf, sample.format.codec, blackhole);
+    	}
+    	records.add(sample.records, sample.encodedBytes);
     }
     
-    @Group("HeapStringRead614Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 888)    
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapStringRead614Kb(final Heap614Kb sample, final Blackhole blackhole) {
-    	stringReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void transcode(final Flyweights sample, final RecordOutput output, final Records records, final Blackhole blackhole) {
+    	transcodeTest(sample.sampleBuff, output, sample, blackhole);
+    	records.add(sample.records, sample.bytes);
     }
     
-    @Group("HeapBufferRead614Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 888)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapBufferRead614Kb(final Heap614Kb sample, final Blackhole blackhole) {
-    	bufferReadTest(sample.sampleBuff.duplicate(), blackhole);
+    public void recordScan(final Flyweights sample, final RecordOutput output, final Records records, final Blackhole blackhole) {
+    	recordScanTest(sample.recordsBuff, output.flyweight, blackhole);
+    	records.add(sample.records, sample.recordsBuff.readableBytes());
     }
-
-    @Group("DirectStringWrite1Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 1)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectStringWrite1Kb(final Direct1Kb sample, final Blackhole blackhole) {
-        stringWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void pojoScan(final Flyweights sample, final Records records, final Blackhole blackhole) {
+    	pojoScanTest(sample.pojos, blackhole);
+    	records.add(sample.records, 0);
     }
-
-    @Group("DirectStringWrite56Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 82)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectStringWrite56Kb(final Direct56Kb sample, final Blackhole blackhole) {
-        stringWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void recordFind(final Flyweights sample, final RecordOutput output, final Records records, final Blackhole blackhole) {
+    	recordFindTest(sample.recordsBuff, output.flyweight, sample.lastGuidBytes, blackhole);
+    	records.add(sample.records, sample.recordsBuff.readableBytes());
     }
-
-    @Group("DirectStringWrite118Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 171)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectStringWrite118Kb(final Direct118Kb sample, final Blackhole blackhole) {
-        stringWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void pojoFind(final Flyweights sample, final Records records, final Blackhole blackhole) {
+    	pojoFindTest(sample.pojos, sample.lastGuid, blackhole);
+    	records.add(sample.records, 0);
     }
-
-    @Group("DirectStringWrite614Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 888)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectStringWrite614Kb(final Direct614Kb sample, final Blackhole blackhole) {
-        stringWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void cacheLookup(final CacheInput input, final Records records, final Blackhole blackhole) {
+    	cacheLookupTest(input.cache, input.keys, blackhole);
+    	records.add(input.keys.length, 0);
     }
-
-    @Group("DirectBufferWrite1Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 1)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void DirectBufferWrite1Kb(final Direct1Kb sample, final Blackhole blackhole) {
-        bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void reparseLookup(final CacheInput input, final Records records, final Blackhole blackhole) {
+    	reparseLookupTest(input.jsonByGuid, input.keys, blackhole);
+    	records.add(input.keys.length, 0);
     }
-
-    @Group("DirectBufferWrite56Kb")    
+    
     @Fork(1)
-    @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 82)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
     @Benchmark
-    public void DirectBufferWrite56Kb(final Direct56Kb sample, final Blackhole blackhole) {
-        bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    public Person cacheGet(final CacheInput input, final KeyCursor cursor) {
+    	return input.cache.get(cursor.next(input.keys));
     }
-
-    @Group("DirectBufferWrite118Kb")    
+    
     @Fork(1)
-    @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 171)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
     @Benchmark
-    public void DirectBufferWrite118Kb(final Direct118Kb sample, final Blackhole blackhole) {
-        bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    public Person reparseGet(final CacheInput input, final KeyCursor cursor) {
+    	return CODEC.readPerson(input.jsonByGuid.get(cursor.next(input.keys)).duplicate());
     }
 
-    @Group("DirectBufferWrite614Kb")    
+    /**
+     * One document per invocation so the sampled times are per document latencies, reported as
+     * percentiles per payload. See {@link OpenLoopDriver} for latencies at a fixed request rate.
+     */
     @Fork(1)
-    @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 888)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
     @Benchmark
-    public void DirectBufferWrite614Kb(final Direct614Kb sample, final Blackhole blackhole) {
-        bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    public Person[] latencyRead(final Sample sample) {
+    	return CODEC.readPersons(sample.sampleBuff.duplicate());
     }
 
-    @Group("HeapStringWrite1Kb")    
     @Fork(1)
-    @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 1)
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
     @Benchmark
-    public void HeapStringWrite1Kb(final Heap1Kb sample, final Blackhole blackhole) {
-        stringWriteTest(sample.pojos, sample.cbf, blackhole);
+    public ChannelBuffer latencyWrite(final Sample sample) {
+    	return CODEC.write(sample.cbf, sample.pojos);
     }
 
-    @Group("HeapStringWrite56Kb")    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 82)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapStringWrite56Kb(final Heap56Kb sample, final Blackhole blackhole) {
-        stringWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void projectedRead(final ProjectionSample sample, final Records records, final Blackhole blackhole) {
+    	projectedReadTest(sample.sampleBuff, sample.projection, blackhole);
+    	records.add(sample.records, sample.bytes);
     }
-
-    @Group("HeapStringWrite118Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 171)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapStringWrite118Kb(final Heap118Kb sample, final Blackhole blackhole) {
-        stringWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void lazyRead(final LazySample sample, final Records records, final Blackhole blackhole) {
+    	lazyReadTest(sample.sampleBuff.duplicate(), sample.access, blackhole);
+    	records.add(sample.records, sample.bytes);
     }
-
-    @Group("HeapStringWrite614Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 888)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapStringWrite614Kb(final Heap614Kb sample, final Blackhole blackhole) {
-        stringWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void boundRead(final LazySample sample, final Records records, final Blackhole blackhole) {
+    	boundReadTest(sample.sampleBuff.duplicate(), sample.access, blackhole);
+    	records.add(sample.records, sample.bytes);
     }
-
-    @Group("HeapBufferWrite1Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 1)
+    @OperationsPerInvocation(loopsPerOp)
     @Benchmark
-    public void HeapBufferWrite1Kb(final Heap1Kb sample, final Blackhole blackhole) {
-        bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void ndjsonRead(final Lines sample, final Records records, final Blackhole blackhole) {
+    	ndjsonReadTest(sample.linesBuff, sample.reader, blackhole);
+    	records.add(sample.records, sample.lineBytes);
     }
-
-    @Group("HeapBufferWrite56Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 82)
+    @OperationsPerInvocation(loopsPerOp)
+    @Benchmark
+    public void ndjsonWrite(final Sample sample, final Records records, final Blackhole blackhole) {
+    	ndjsonWriteTest(sample.pojos, sample.cbf, blackhole);
+    	records.add(sample.records, sample.bytes);
+    }
+    
+    /*
+     * Input benchmarks make one streaming pass per invocation and report in microseconds,
+     * so the bytes counter reads directly as MB/s.
+     */
+    
+    @Fork(1)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Benchmark
+    public void inputRead(final Input input, final Records records, final Blackhole blackhole) {
+    	final ChannelBuffer b = input.sampleBuff.duplicate();
+    	final int bytes = b.readableBytes();
+    	records.addPass(streamPassTest(new ChannelBufferInputStream(b), blackhole), bytes);
+    }
+    
+    @Fork(1)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Benchmark
+    public void mappedStreamRead(final MappedInput input, final Records records, final Blackhole blackhole) {
+    	records.addPass(streamPassTest(input.source.openStream(), blackhole), input.source.size());
+    }
+    
+    /*
+     * Large document benchmarks parse one whole generated document per invocation,
+     * comparing the single threaded bind with the fork join bind.
+     */
+    
+    @Fork(1)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Benchmark
+    public void largeRead(final LargeInput input, final Records records, final Blackhole blackhole) {
+    	blackhole.consume(deserPersons(input.sampleBuff.duplicate()));
+    	records.addPass(input.records, input.bytes);
+    }
+    
+    @Fork(1)
+    @OutputTimeUnit(TimeUnit.SECONDS)
     @Benchmark
-    public void HeapBufferWrite56Kb(final Heap56Kb sample, final Blackhole blackhole) {
-        bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void parallelRead(final ParallelInput input, final Records records, final Blackhole blackhole) {
+    	blackhole.consume(input.parser.parse(input.sampleBuff.duplicate()));
+    	records.addPass(input.records, input.bytes);
     }
 
-    @Group("HeapBufferWrite118Kb")    
+    /*
+     * Pipeline benchmarks push the whole framed payload through an embedded Netty pipeline per invocation,
+     * so the records counter reads as messages/ms. Run with the JVMSummaryProfiler for MemAllocPerRecord.
+     */
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 171)
     @Benchmark
-    public void HeapBufferWrite118Kb(final Heap118Kb sample, final Blackhole blackhole) {
-        bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void frameDecode(final Frames frames, final Pipeline pipeline, final Records records, final Blackhole blackhole) {
+    	records.addPass(frameDecodeTest(frames.chunks, pipeline.decoder(frames), blackhole), frames.frameBytes);
     }
-
-    @Group("HeapBufferWrite614Kb")    
+    
     @Fork(1)
     @OutputTimeUnit(TimeUnit.MILLISECONDS)
-    @GroupThreads(3)
-    @OperationsPerInvocation(loopsPerOp * 888)
     @Benchmark
-    public void HeapBufferWrite614Kb(final Heap614Kb sample, final Blackhole blackhole) {
-        bufferWriteTest(sample.pojos, sample.cbf, blackhole);
+    public void frameEncode(final Frames frames, final Pipeline pipeline, final Records records, final Blackhole blackhole) {
+    	frameEncodeTest(frames.pojos, pipeline.encoder(frames), blackhole);
+    	records.addPass(frames.records, frames.frameBytes);
+    }
+    
+    public int frameDecodeTest(final ChannelBuffer[] chunks, final DecoderEmbedder<Person> decoder, final Blackhole blackHole) {
+    	int messages = 0;
+    	for(ChannelBuffer chunk: chunks) {
+    		decoder.offer(chunk.duplicate());
+    		Person p;
+    		while((p = decoder.poll())!=null) {
+    			blackHole.consume(p);
+    			messages++;
+    		}
+    	}
+    	return messages;
+    }
+    
+    public void frameEncodeTest(final Person[] people, final EncoderEmbedder<ChannelBuffer> encoder, final Blackhole blackHole) {
+    	for(Person p: people) {
+    		encoder.offer(p);
+    		blackHole.consume(encoder.poll());
+    	}
+    }
+    
+    /*
+     * Fragment benchmarks parse the payload from a composite of chunkSize fragments once per invocation,
+     * either streaming the fragments in place or consolidating them into one heap buffer first.
+     * Run with the JVMSummaryProfiler to compare the allocation of the two.
+     */
+    
+    @Fork(1)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Benchmark
+    public void fragmentedRead(final Fragments fragments, final Records records, final Blackhole blackhole) {
+    	blackhole.consume(CODEC.readPersons(fragments.composite.duplicate()).length);
+    	records.addPass(fragments.records, fragments.bytes);
+    }
+    
+    @Fork(1)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Benchmark
+    public void consolidatedRead(final Fragments fragments, final Records records, final Blackhole blackhole) {
+    	blackhole.consume(CODEC.readPersons(ChannelBuffers.copiedBuffer(fragments.composite.duplicate())).length);
+    	records.addPass(fragments.records, fragments.bytes);
     }
 
 	
@@ -15,16 +15,19 @@
  */
 package com.heliosapm.benchmarks.json;
 
+import java.lang.management.ClassLoadingMXBean;
+import java.lang.management.CompilationMXBean;
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
 
 import org.openjdk.jmh.infra.BenchmarkParams;
@@ -41,7 +44,13 @@ import com.sun.management.ThreadMXBean;
 
 /**
  * <p>Title: JVMSummaryProfiler</p>
- * <p>Description: </p> 
+ * <p>Description: Reports GC, CPU and allocation counters for each iteration. Thread CPU and allocation are summed
+ * over the current benchmark's worker threads only and are also normalized per operation, counting
+ * <code>@OperationsPerInvocation</code>, and per input byte and per record reported to the {@link WorkCounters}.
+ * Individual collections are summarized per collector and heap pool by a {@link GcPauseRecorder}. JIT compilation time,
+ * class loading and, where the JVM exposes it, safepoint time are reported per iteration so diverging runs can be
+ * told apart from warmup effects.
+ * The {@link InliningProfiler} adds the inlining decisions of the forked JVM.</p> 
  * <p>Company: Helios Development Group LLC</p>
  * @author Whitehead (nwhitehead AT heliosdev DOT org)
  * <p><code>com.heliosapm.benchmarks.json.JVMSummaryProfiler</code></p>
@@ -50,8 +59,16 @@ import com.sun.management.ThreadMXBean;
 public class JVMSummaryProfiler implements InternalProfiler {
 	
 	private static final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
-	private static final OperatingSystemMXBean OS =  (OperatingSystemMXBean)sun.management.ManagementFactoryHelper.getOperatingSystemMXBean();
-	private static final ThreadMXBean TX =  (ThreadMXBean)sun.management.ManagementFactoryHelper.getThreadMXBean();
+	private static final OperatingSystemMXBean OS =  (OperatingSystemMXBean)ManagementFactory.getOperatingSystemMXBean();
+	private static final ThreadMXBean TX =  (ThreadMXBean)ManagementFactory.getThreadMXBean();
+	private static final CompilationMXBean COMPILER = ManagementFactory.getCompilationMXBean();
+	private static final ClassLoadingMXBean CLASSES = ManagementFactory.getClassLoadingMXBean();
+	/** The internal HotSpot runtime bean the safepoint counters are read from, or null if it is not accessible */
+	private static final Object HOTSPOT_RUNTIME;
+	/** The safepoint time accessor of {@link #HOTSPOT_RUNTIME} */
+	private static final Method SAFEPOINT_TIME;
+	/** The safepoint count accessor of {@link #HOTSPOT_RUNTIME} */
+	private static final Method SAFEPOINT_COUNT;
 	
 	private static final Map<TimeUnit, String> TIMEUNITSYMBOLS;
 	
@@ -65,21 +82,44 @@ public class JVMSummaryProfiler implements InternalProfiler {
 		tmp.put(TimeUnit.HOURS, "h");
 		tmp.put(TimeUnit.DAYS, "d");
 		TIMEUNITSYMBOLS = Collections.unmodifiableMap(tmp);
+		// sun.management is not exported from JDK 9 on, so the safepoint counters are optional
+		Object runtime = null;
+		Method time = null, count = null;
+		try {
+			runtime = Class.forName("sun.management.ManagementFactoryHelper").getMethod("getHotspotRuntimeMBean").invoke(null);
+			final Class<?> iface = Class.forName("sun.management.HotspotRuntimeMBean");
+			time = iface.getMethod("getTotalSafepointTime");
+			count = iface.getMethod("getSafepointCount");
+			time.invoke(runtime);
+		} catch (Throwable t) {
+			runtime = null;
+		}
+		HOTSPOT_RUNTIME = runtime;
+		SAFEPOINT_TIME = time;
+		SAFEPOINT_COUNT = count;
 	}
 	
 	
+	/** The name suffix JMH gives benchmark worker threads, following the benchmark name */
+	public static final String WORKER_SUFFIX = "-jmh-worker-";
+	
+	/** The process wide GC and CPU counters at the start of the iteration */
 	protected long[] baseline = null;
-	protected final ThreadGroup threadGroup;
-	protected final List<Thread> workerThreads = new CopyOnWriteArrayList<Thread>();
+	/** The input bytes counter at the start of the iteration */
+	protected long inputBaseline = 0;
+	/** The records counter at the start of the iteration */
+	protected long recordsBaseline = 0;
+	/** The CPU time and allocated bytes of each worker thread alive at the start of the iteration, keyed by thread id */
+	protected final Map<Long, long[]> threadBaselines = new HashMap<Long, long[]>();
+	/** Records the individual collections during each iteration */
+	protected final GcPauseRecorder gcPauses = GcPauseRecorder.getInstance();
 
 	/**
 	 * Creates a new JVMSummaryProfiler
 	 */
 	public JVMSummaryProfiler() {
-		threadGroup = Thread.currentThread().getThreadGroup();
-//		log("\n\t====================\n\tProf Thread [%s][%s]\n\t====================", Thread.currentThread().getName(), Thread.currentThread().getThreadGroup());
 	}
-
+	
 	/**
 	 * {@inheritDoc}
 	 * @see org.openjdk.jmh.profile.Profiler#getDescription()
@@ -95,7 +135,18 @@ public class JVMSummaryProfiler implements InternalProfiler {
 	 */
 	@Override
 	public void beforeIteration(final BenchmarkParams benchmarkParams, final IterationParams iterationParams) {
+		threadBaselines.clear();
+		// the worker pool is created per benchmark, so on the first iteration there are no workers yet
+		final long[] ids = workerThreadIds(benchmarkParams.getBenchmark());
+		final long[] cpu = TX.getThreadCpuTime(ids);
+		final long[] alloc = TX.getThreadAllocatedBytes(ids);
+		for(int i = 0; i < ids.length; i++) {
+			threadBaselines.put(ids[i], new long[]{cpu[i], alloc[i]});
+		}
+		inputBaseline = WorkCounters.getInputBytes();
+		recordsBaseline = WorkCounters.getRecords();
 		baseline = getJVMStats();
+		gcPauses.start();
 	}
 
 	/**
@@ -104,69 +155,117 @@ public class JVMSummaryProfiler implements InternalProfiler {
 	 */
 	@Override
 	public Collection<? extends Result> afterIteration(final BenchmarkParams benchmarkParams, final IterationParams iterationParams, final IterationResult result) {		
-		final Collection<Result> results = new ArrayList<Result>(5);
-//		benchmarkParams.getParam("")
-		final int tcount = benchmarkParams.getThreads();
-		final Thread[] threads = new Thread[tcount+1];
-		threadGroup.enumerate(threads, false);
-		final String bname = benchmarkParams.getBenchmark();
-		for(Thread t: threads) {
-			if(t.getName().startsWith(bname)) {
-				workerThreads.add(t);				
-			}
+		final Collection<Result> results = new ArrayList<Result>(32);
+		results.addAll(gcPauses.stop());
+		final long[] deltas = getJVMStats(baseline, TimeUnit.MILLISECONDS, benchmarkParams.getBenchmark(), results);
+		final long[] threadDeltas = collectThreadStats(benchmarkParams.getBenchmark());
+		final SpaceUnit su = SpaceUnit.KILOBYTES; //.pickUnit(deltas[4]);
+		results.add(new ProfilerResult("ThreadCPU", TimeUnit.MILLISECONDS.convert(threadDeltas[0], TimeUnit.NANOSECONDS), "ThreadCPU " + TIMEUNITSYMBOLS.get(TimeUnit.MILLISECONDS), AggregationPolicy.AVG));
+		results.add(new ProfilerResult("MemAlloc", su.dconvert(threadDeltas[1], SpaceUnit.BYTES), "Memory Allocated " + su.symbol(), AggregationPolicy.AVG));
+		// all ops, not just measured ones, since the counters also cover the synchronization ops.
+		// JMH has already multiplied the invocation count by @OperationsPerInvocation.
+		final long ops = result.getMetadata()==null ? 0L : result.getMetadata().getAllOps();
+		if(ops > 0) {
+			results.add(new ProfilerResult("MemAllocPerOp", (double)threadDeltas[1] / ops, "Memory Allocated b/op", AggregationPolicy.AVG));
+			results.add(new ProfilerResult("ThreadCPUPerOp", (double)threadDeltas[0] / ops, "ThreadCPU ns/op", AggregationPolicy.AVG));
+		}
+		final long inputBytes = WorkCounters.getInputBytes() - inputBaseline;
+		if(inputBytes > 0) {
+			results.add(new ProfilerResult("MemAllocPerInputByte", (double)threadDeltas[1] / inputBytes, "Memory Allocated b/input b", AggregationPolicy.AVG));
+		}
+		final long records = WorkCounters.getRecords() - recordsBaseline;
+		if(records > 0) {
+			results.add(new ProfilerResult("MemAllocPerRecord", (double)threadDeltas[1] / records, "Memory Allocated b/record", AggregationPolicy.AVG));
 		}
-		getJVMStats(baseline, TimeUnit.MILLISECONDS, benchmarkParams.getBenchmark(), results);
-//		log("Test: [%s], TG Threads: %s", benchmarkParams.getBenchmark(), Arrays.toString(threads));		
 		return results;
 	}
 	
+	/**
+	 * Returns the process wide GC collection count, GC time, CPU time, JIT compilation time,
+	 * loaded and unloaded class counts, safepoint time and safepoint count. The safepoint counters are zero
+	 * when the internal HotSpot runtime bean is not accessible.
+	 * @return the counters
+	 */
 	public long[] getJVMStats() {
-		final long[] countTime = new long[5];
+		final long[] countTime = new long[8];
 		for(GarbageCollectorMXBean gc: collectors) {
 			countTime[0] += gc.getCollectionCount();
 			countTime[1] += gc.getCollectionTime();
 		}
-		countTime[3] = OS.getProcessCpuTime();
-		final long[] tstats = collectThreadStats();
-		countTime[2] = tstats[0];		
-		countTime[4] = tstats[1];
+		countTime[2] = OS.getProcessCpuTime();
+		countTime[3] = COMPILER!=null && COMPILER.isCompilationTimeMonitoringSupported() ? COMPILER.getTotalCompilationTime() : 0L;
+		countTime[4] = CLASSES.getTotalLoadedClassCount();
+		countTime[5] = CLASSES.getUnloadedClassCount();
+		if(HOTSPOT_RUNTIME!=null) {
+			try {
+				countTime[6] = ((Number)SAFEPOINT_TIME.invoke(HOTSPOT_RUNTIME)).longValue();
+				countTime[7] = ((Number)SAFEPOINT_COUNT.invoke(HOTSPOT_RUNTIME)).longValue();
+			} catch (Exception x) {/* No Op */}
+		}
 		return countTime;
 	}
 	
-	public void getJVMStats(final long[] prior, final TimeUnit cpuUnit, final String testName, final Collection<Result> results) {
+	public long[] getJVMStats(final long[] prior, final TimeUnit cpuUnit, final String testName, final Collection<Result> results) {
 		final long[] countTime = getJVMStats();
-		final long[] deltas = new long[]{
-				countTime[0] - prior[0],
-				countTime[1] - prior[1],
-				countTime[2] - prior[2],
-				countTime[3] - prior[3],
-				countTime[4] - prior[4],
-		};
+		final long[] deltas = new long[countTime.length];
+		for(int i = 0; i < countTime.length; i++) {
+			deltas[i] = countTime[i] - prior[i];
+		}
 		results.add(new ProfilerResult("GC-Collections", deltas[0], "GC Collections", AggregationPolicy.AVG));
 		results.add(new ProfilerResult("GC-Time", deltas[1], "GC Time", AggregationPolicy.AVG));
-		results.add(new ProfilerResult("ThreadCPU", cpuUnit.convert(deltas[2], TimeUnit.NANOSECONDS), "ThreadCPU " + TIMEUNITSYMBOLS.get(cpuUnit), AggregationPolicy.AVG));
-		results.add(new ProfilerResult("JVMCPU", cpuUnit.convert(deltas[3], TimeUnit.NANOSECONDS), "JVMCPU " + TIMEUNITSYMBOLS.get(cpuUnit), AggregationPolicy.AVG));
-		final SpaceUnit su = SpaceUnit.KILOBYTES; //.pickUnit(deltas[4]);
-		results.add(new ProfilerResult("MemAlloc", su.dconvert(deltas[4], SpaceUnit.BYTES), "Memory Allocated " + su.symbol(), AggregationPolicy.AVG));
-
-//		final StringBuilder b = new StringBuilder("JVM Stats for [").append(testName).append("]");
-//		
-//		b.append("\n\tGC Collections:").append(deltas[0]);
-//		b.append("\n\tGC Time:").append(deltas[1] - prior[1]);
-//		b.append("\n\tThread CPU Time:").append(cpuUnit.convert(deltas[2], TimeUnit.NANOSECONDS));
-//		b.append("\n\tJVM CPU Time:").append(cpuUnit.convert(deltas[3], TimeUnit.NANOSECONDS));
-//		b.append("\n\tAllocated Bytes:").append((su.fovert(deltas[4], SpaceUnit.BYTES)));
-//		return b.toString();		
+		results.add(new ProfilerResult("JVMCPU", cpuUnit.convert(deltas[2], TimeUnit.NANOSECONDS), "JVMCPU " + TIMEUNITSYMBOLS.get(cpuUnit), AggregationPolicy.AVG));
+		results.add(new ProfilerResult("JIT-Time", deltas[3], "JIT Time ms", AggregationPolicy.AVG));
+		results.add(new ProfilerResult("Classes-Loaded", deltas[4], "Classes Loaded", AggregationPolicy.AVG));
+		results.add(new ProfilerResult("Classes-Unloaded", deltas[5], "Classes Unloaded", AggregationPolicy.AVG));
+		results.add(new ProfilerResult("Classes-Total", CLASSES.getLoadedClassCount(), "Classes", AggregationPolicy.MAX));
+		if(HOTSPOT_RUNTIME!=null) {
+			results.add(new ProfilerResult("Safepoint-Time", deltas[6], "Safepoint Time ms", AggregationPolicy.AVG));
+			results.add(new ProfilerResult("Safepoints", deltas[7], "Safepoints", AggregationPolicy.AVG));
+		}
+		return deltas;
 	}
 	
-	protected long[] collectThreadStats() {
-		final long[] snapshot = new long[2];
-		for(Thread t: workerThreads) {
-			final long id = t.getId();
-			snapshot[0] = TX.getThreadCpuTime(id);
-			snapshot[1] = TX.getThreadAllocatedBytes(id);
+	/**
+	 * Sums the CPU time and allocated bytes of the passed benchmark's worker threads since the start of the iteration.
+	 * A worker started during the iteration counts from its start.
+	 * @param benchmark The benchmark name
+	 * @return the summed CPU time in ns and allocated bytes
+	 */
+	protected long[] collectThreadStats(final String benchmark) {
+		final long[] ids = workerThreadIds(benchmark);
+		final long[] cpu = TX.getThreadCpuTime(ids);
+		final long[] alloc = TX.getThreadAllocatedBytes(ids);
+		final long[] totals = new long[2];
+		for(int i = 0; i < ids.length; i++) {
+			// -1 if the thread died in the meantime
+			if(cpu[i] < 0 || alloc[i] < 0) continue;
+			final long[] base = threadBaselines.get(ids[i]);
+			totals[0] += cpu[i] - (base==null ? 0L : base[0]);
+			totals[1] += alloc[i] - (base==null ? 0L : base[1]);
+		}
+		return totals;
+	}
+	
+	/**
+	 * Returns the ids of the live worker threads of the passed benchmark
+	 * @param benchmark The benchmark name
+	 * @return the thread ids
+	 */
+	protected static long[] workerThreadIds(final String benchmark) {
+		ThreadGroup root = Thread.currentThread().getThreadGroup();
+		while(root.getParent()!=null) root = root.getParent();
+		Thread[] threads = new Thread[root.activeCount() + 16];
+		int count;
+		while((count = root.enumerate(threads, true))==threads.length) {
+			threads = new Thread[threads.length * 2];
+		}
+		final String prefix = benchmark + WORKER_SUFFIX;
+		final long[] ids = new long[count];
+		int n = 0;
+		for(int i = 0; i < count; i++) {
+			if(threads[i].getName().startsWith(prefix)) ids[n++] = threads[i].getId();
 		}
-		return snapshot;
+		return Arrays.copyOf(ids, n);
 	}
 	
 //  public static void log(final Object fmt, final Object...args) {
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.Arrays;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * <p>Title: JsonBoundaryScanner</p>
+ * <p>Description: Structural scanner which finds the byte ranges of the object or array elements of a top level
+ * JSON array, or of the lines of newline delimited JSON, without tokenizing or decoding anything. It only tracks
+ * nesting depth and string/escape state, so it runs at close to memory speed.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.JsonBoundaryScanner</code></p>
+ */
+
+public class JsonBoundaryScanner {
+	/** The initial capacity of the bounds array, in elements */
+	public static final int INITIAL_ELEMENTS = 128;
+	/** The JSON lines delimiter */
+	public static final byte NEWLINE = '\n';
+
+	private JsonBoundaryScanner() {}
+
+	/**
+	 * Scans the readable bytes of the passed buffer, which must contain a JSON array of objects or arrays,
+	 * and returns the absolute buffer index of the start of each element and the index just past its end.
+	 * The buffer's indexes are not modified.
+	 * @param json The buffer to scan
+	 * @return an array of <code>[start0, end0, start1, end1 ...]</code>, trimmed to the number of elements found
+	 */
+	public static int[] elementBounds(final ChannelBuffer json) {
+		if(json==null || json.readableBytes()<2) throw new IllegalArgumentException("Incoming data was null or empty");
+		final Bounds bounds = new Bounds();
+		if(json.hasArray()) {
+			final int offset = json.arrayOffset();
+			scan(json.array(), offset + json.readerIndex(), offset + json.writerIndex(), -offset, bounds);
+		} else {
+			scan(json, json.readerIndex(), json.writerIndex(), bounds);
+		}
+		return bounds.trimmed();
+	}
+
+	/**
+	 * Scans the readable bytes of the passed buffer, which must contain newline delimited JSON,
+	 * and returns the absolute buffer index of the start of each non-empty line and the index of its end,
+	 * excluding the line terminator. The buffer's indexes are not modified.
+	 * @param ndjson The buffer to scan
+	 * @return an array of <code>[start0, end0, start1, end1 ...]</code>, trimmed to the number of lines found
+	 */
+	public static int[] lineBounds(final ChannelBuffer ndjson) {
+		if(ndjson==null) throw new IllegalArgumentException("Incoming data was null");
+		final Bounds bounds = new Bounds();
+		final int to = ndjson.writerIndex();
+		int start = ndjson.readerIndex();
+		while(start < to) {
+			int next = ndjson.indexOf(start, to, NEWLINE);
+			if(next==-1) next = to;
+			int end = next;
+			if(end > start && ndjson.getByte(end-1)=='\r') end--;
+			if(end > start) {
+				bounds.start(start);
+				bounds.end(end);
+			}
+			start = next + 1;
+		}
+		return bounds.trimmed();
+	}
+
+	private static void scan(final byte[] bytes, final int from, final int to, final int adjust, final Bounds bounds) {
+		int depth = 0;
+		boolean inString = false;
+		for(int i = from; i < to; i++) {
+			final byte b = bytes[i];
+			if(inString) {
+				if(b=='\\') i++;
+				else if(b=='"') inString = false;
+				continue;
+			}
+			switch(b) {
+				case '"':
+					inString = true;
+					break;
+				case '{':
+				case '[':
+					if(depth==1) bounds.start(i + adjust);
+					depth++;
+					break;
+				case '}':
+				case ']':
+					depth--;
+					if(depth==1) bounds.end(i + 1 + adjust);
+					else if(depth==0) return;
+					break;
+				default:
+			}
+		}
+		if(depth!=0) throw new IllegalArgumentException("Unterminated JSON array");
+	}
+
+	private static void scan(final ChannelBuffer json, final int from, final int to, final Bounds bounds) {
+		int depth = 0;
+		boolean inString = false;
+		for(int i = from; i < to; i++) {
+			final byte b = json.getByte(i);
+			if(inString) {
+				if(b=='\\') i++;
+				else if(b=='"') inString = false;
+				continue;
+			}
+			switch(b) {
+				case '"':
+					inString = true;
+					break;
+				case '{':
+				case '[':
+					if(depth==1) bounds.start(i);
+					depth++;
+					break;
+				case '}':
+				case ']':
+					depth--;
+					if(depth==1) bounds.end(i + 1);
+					else if(depth==0) return;
+					break;
+				default:
+			}
+		}
+		if(depth!=0) throw new IllegalArgumentException("Unterminated JSON array");
+	}
+
+	/**
+	 * <p>Title: Bounds</p>
+	 * <p>Description: Growable int array of start/end pairs</p>
+	 */
+	private static class Bounds {
+		private int[] bounds = new int[INITIAL_ELEMENTS * 2];
+		private int size = 0;
+
+		void start(final int index) {
+			if(size + 2 > bounds.length) bounds = Arrays.copyOf(bounds, bounds.length * 2);
+			bounds[size] = index;
+		}
+
+		void end(final int index) {
+			bounds[size+1] = index;
+			size += 2;
+		}
+
+		int[] trimmed() {
+			return Arrays.copyOf(bounds, size);
+		}
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.Arrays;
+
+/**
+ * <p>Title: LatencyHistogram</p>
+ * <p>Description: Fixed size log-linear histogram of non-negative values, in the style of HdrHistogram.
+ * Values below 256 are counted exactly, larger values in buckets of 128 per power of 2, so a percentile is
+ * reported within 0.8% of the recorded value across the whole <code>long</code> range with 7,296 counters.</p>
+ * <p>Recording is a shift and an increment, with no allocation. A histogram is not thread safe: record on one
+ * thread and combine per thread histograms with {@link #add(LatencyHistogram)}.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.LatencyHistogram</code></p>
+ */
+
+public class LatencyHistogram {
+	/** The number of exactly counted values is 2 ^ SUB_BITS */
+	private static final int SUB_BITS = 8;
+	/** The number of buckets per power of 2 above the exact range */
+	private static final int HALF = 1 << (SUB_BITS - 1);
+	/** The number of counters */
+	private static final int COUNTERS = (65 - SUB_BITS) * HALF;
+
+	/** The counts per bucket */
+	private final long[] counts = new long[COUNTERS];
+	/** The total number of recorded values */
+	private long totalCount = 0;
+	/** The sum of the recorded values */
+	private double sum = 0D;
+	/** The smallest recorded value */
+	private long min = Long.MAX_VALUE;
+	/** The largest recorded value */
+	private long max = 0;
+
+	/**
+	 * Records a value
+	 * @param value The value, e.g. a latency in nanos
+	 */
+	public void recordValue(final long value) {
+		recordValues(value, 1);
+	}
+
+	/**
+	 * Records a value a number of times
+	 * @param value The value
+	 * @param count The number of times to record it
+	 */
+	public void recordValues(final long value, final long count) {
+		if(value < 0) throw new IllegalArgumentException("Negative value: " + value);
+		counts[index(value)] += count;
+		totalCount += count;
+		sum += (double)value * count;
+		if(value < min) min = value;
+		if(value > max) max = value;
+	}
+
+	/**
+	 * Adds the values recorded in the passed histogram to this one
+	 * @param other The histogram to add
+	 */
+	public void add(final LatencyHistogram other) {
+		for(int i = 0; i < COUNTERS; i++) {
+			counts[i] += other.counts[i];
+		}
+		totalCount += other.totalCount;
+		sum += other.sum;
+		if(other.min < min) min = other.min;
+		if(other.max > max) max = other.max;
+	}
+
+	/**
+	 * Discards all recorded values
+	 */
+	public void reset() {
+		Arrays.fill(counts, 0L);
+		totalCount = 0;
+		sum = 0D;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	/**
+	 * Returns the value at the passed percentile: the highest value equivalent to the bucket holding the
+	 * sample of that rank, capped at the recorded maximum
+	 * @param percentile The percentile, from 0 to 100
+	 * @return the value or 0 if nothing was recorded
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		if(percentile < 0D || percentile > 100D) throw new IllegalArgumentException("Invalid percentile: " + percentile);
+		if(totalCount==0) return 0;
+		final long rank = Math.max(1L, (long)Math.ceil(percentile / 100D * totalCount));
+		long seen = 0;
+		for(int i = 0; i < COUNTERS; i++) {
+			seen += counts[i];
+			if(seen >= rank) return Math.min(max, highestEquivalentValue(i));
+		}
+		return max;
+	}
+
+	/**
+	 * Returns the number of recorded values
+	 * @return the count
+	 */
+	public long getTotalCount() {
+		return totalCount;
+	}
+
+	/**
+	 * Returns the mean of the recorded values
+	 * @return the mean or 0 if nothing was recorded
+	 */
+	public double getMean() {
+		return totalCount==0 ? 0D : sum / totalCount;
+	}
+
+	/**
+	 * Returns the smallest recorded value
+	 * @return the minimum or 0 if nothing was recorded
+	 */
+	public long getMinValue() {
+		return totalCount==0 ? 0 : min;
+	}
+
+	/**
+	 * Returns the largest recorded value
+	 * @return the maximum
+	 */
+	public long getMaxValue() {
+		return max;
+	}
+
+	/**
+	 * Returns the counter index of the passed value
+	 */
+	static int index(final long value) {
+		final int msb = 63 - Long.numberOfLeadingZeros(value);
+		if(msb < SUB_BITS) return (int)value;
+		final int shift = msb - SUB_BITS + 1;
+		return 2 * HALF + (msb - SUB_BITS) * HALF + (int)((value >>> shift) - HALF);
+	}
+
+	/**
+	 * Returns the highest value counted by the passed counter index
+	 */
+	static long highestEquivalentValue(final int index) {
+		if(index < 2 * HALF) return index;
+		final int k = (index - 2 * HALF) / HALF;
+		final int r = (index - 2 * HALF) % HALF;
+		final int shift = k + 1;
+		final long lowest = (long)(HALF + r) << shift;
+		// the top bucket ends at Long.MAX_VALUE
+		return lowest + ((1L << shift) - 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("LatencyHistogram [count=%s, min=%s, p50=%s, p99=%s, p99.9=%s, max=%s]",
+				totalCount, getMinValue(), getValueAtPercentile(50D), getValueAtPercentile(99D), getValueAtPercentile(99.9D), max);
+	}
+
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import static com.heliosapm.benchmarks.json.LazyPersonIndexer.*;
+
+import java.util.Date;
+import java.util.Set;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * <p>Title: LazyPerson</p>
+ * <p>Description: Read only view of a person which decodes each field from the underlying {@link ChannelBuffer}
+ * only when its getter is called. Values are not cached, so callers reading a field repeatedly should hold on to it.
+ * Fields missing from the record return the same defaults as an unset {@link Person}.
+ * Created by {@link LazyPersonIndexer#index(ChannelBuffer)}.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.LazyPerson</code></p>
+ */
+
+public class LazyPerson {
+	/** The indexer that created this view, which supplies the decoders */
+	private final LazyPersonIndexer indexer;
+	/** The buffer the record is in */
+	private final ChannelBuffer json;
+	/** The offset table shared by all the records of the document */
+	private final int[] offsets;
+	/** The first slot of this record in the offset table */
+	private final int base;
+
+	LazyPerson(final LazyPersonIndexer indexer, final ChannelBuffer json, final int[] offsets, final int base) {
+		this.indexer = indexer;
+		this.json = json;
+		this.offsets = offsets;
+		this.base = base;
+	}
+
+	private int start(final int field) {
+		return offsets[base + field*2];
+	}
+
+	private int end(final int field) {
+		return offsets[base + field*2 + 1];
+	}
+
+	private String string(final int field) {
+		final int start = start(field);
+		return start==-1 ? null : indexer.decodeString(json, start, end(field));
+	}
+
+	private float decimal(final int field) {
+		final int start = start(field);
+		return start==-1 ? -1f : decodeFloat(json, start, end(field));
+	}
+
+	/**
+	 * Returns the <b><code>_id</code></b> field
+	 * @return the id
+	 */
+	public String getId() {
+		return string(ID);
+	}
+
+	/**
+	 * Returns the index
+	 * @return the index
+	 */
+	public long getIndex() {
+		final int start = start(INDEX);
+		return start==-1 ? -1L : decodeLong(json, start, end(INDEX));
+	}
+
+	/**
+	 * Returns the guid
+	 * @return the guid
+	 */
+	public String getGuid() {
+		return string(GUID);
+	}
+
+	/**
+	 * Returns the <b><code>isActive</code></b> field
+	 * @return true if active
+	 */
+	public boolean isActive() {
+		final int start = start(ACTIVE);
+		return start!=-1 && decodeBoolean(json, start);
+	}
+
+	/**
+	 * Returns the picture url
+	 * @return the picture url
+	 */
+	public String getPicture() {
+		return string(PICTURE);
+	}
+
+	/**
+	 * Returns the age
+	 * @return the age
+	 */
+	public int getAge() {
+		final int start = start(AGE);
+		return start==-1 ? -1 : (int)decodeLong(json, start, end(AGE));
+	}
+
+	/**
+	 * Returns the eye color
+	 * @return the eye color
+	 */
+	public String getEyeColor() {
+		return string(EYE_COLOR);
+	}
+
+	/**
+	 * Returns the name
+	 * @return the name
+	 */
+	public String getName() {
+		return string(NAME);
+	}
+
+	/**
+	 * Returns the gender
+	 * @return the gender
+	 */
+	public String getGender() {
+		return string(GENDER);
+	}
+
+	/**
+	 * Returns the company
+	 * @return the company
+	 */
+	public String getCompany() {
+		return string(COMPANY);
+	}
+
+	/**
+	 * Returns the email
+	 * @return the email
+	 */
+	public String getEmail() {
+		return string(EMAIL);
+	}
+
+	/**
+	 * Returns the phone
+	 * @return the phone
+	 */
+	public String getPhone() {
+		return string(PHONE);
+	}
+
+	/**
+	 * Returns the address
+	 * @return the address
+	 */
+	public String getAddress() {
+		return string(ADDRESS);
+	}
+
+	/**
+	 * Returns the registration date
+	 * @return the registration date
+	 */
+	public Date getRegistered() {
+		final int start = start(REGISTERED);
+		return start==-1 ? null : indexer.decodeDate(json, start, end(REGISTERED));
+	}
+
+	/**
+	 * Returns the latitude
+	 * @return the latitude
+	 */
+	public float getLatitude() {
+		return decimal(LATITUDE);
+	}
+
+	/**
+	 * Returns the longitude
+	 * @return the longitude
+	 */
+	public float getLongitude() {
+		return decimal(LONGITUDE);
+	}
+
+	/**
+	 * Returns the tags
+	 * @return the tags
+	 */
+	public Set<String> getTags() {
+		final int start = start(TAGS);
+		return start==-1 ? null : indexer.decodeTags(json, start, end(TAGS));
+	}
+
+	/**
+	 * Returns the friends
+	 * @return the friends
+	 */
+	public Friend[] getFriends() {
+		final int start = start(FRIENDS);
+		return start==-1 ? null : indexer.decodeFriends(json, start, end(FRIENDS));
+	}
+
+	/**
+	 * Returns the greeting
+	 * @return the greeting
+	 */
+	public String getGreeting() {
+		return string(GREETING);
+	}
+
+	/**
+	 * Returns the favorite fruit
+	 * @return the favorite fruit
+	 */
+	public String getFavoriteFruit() {
+		return string(FAVORITE_FRUIT);
+	}
+
+	/**
+	 * Decodes every field into a new {@link Person}
+	 * @return the materialized person
+	 */
+	public Person toPerson() {
+		final Person p = new Person();
+		p.id = getId();
+		p.index = getIndex();
+		p.guid = getGuid();
+		p.active = isActive();
+		p.picture = getPicture();
+		p.age = getAge();
+		p.eyeColor = getEyeColor();
+		p.name = getName();
+		p.gender = getGender();
+		p.company = getCompany();
+		p.email = getEmail();
+		p.phone = getPhone();
+		p.address = getAddress();
+		p.registered = getRegistered();
+		p.latitude = getLatitude();
+		p.longitude = getLongitude();
+		p.tags = getTags();
+		p.friends = getFriends();
+		p.greeting = getGreeting();
+		p.favoriteFruit = getFavoriteFruit();
+		return p;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "LazyPerson [" + getId() + ":" + getName() + "]";
+	}
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Set;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * <p>Title: LazyPersonIndexer</p>
+ * <p>Description: Builds {@link LazyPerson} views over a buffer containing a JSON array of persons.
+ * A single structural pass records the start and end of each known field value of each record in one shared
+ * offset table; nothing is decoded until a {@link LazyPerson} getter asks for it. Unknown fields are skipped.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.LazyPersonIndexer</code></p>
+ */
+
+public class LazyPersonIndexer {
+	/** The indexed field names, in the order they usually appear */
+	public static final String[] FIELDS = {
+		"_id", "index", "guid", "isActive", "picture", "age", "eyeColor", "name", "gender", "company",
+		"email", "phone", "address", "registered", "latitude", "longitude", "tags", "friends", "greeting", "favoriteFruit"
+	};
+	/** The number of indexed fields */
+	public static final int FIELD_COUNT = FIELDS.length;
+	/** The number of offset table slots per record */
+	public static final int SLOTS = FIELD_COUNT * 2;
+
+	static final int ID = 0, INDEX = 1, GUID = 2, ACTIVE = 3, PICTURE = 4, AGE = 5, EYE_COLOR = 6, NAME = 7, GENDER = 8, COMPANY = 9,
+		EMAIL = 10, PHONE = 11, ADDRESS = 12, REGISTERED = 13, LATITUDE = 14, LONGITUDE = 15, TAGS = 16, FRIENDS = 17, GREETING = 18, FAVORITE_FRUIT = 19;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+	/** The UTF-8 bytes of the field names */
+	private static final byte[][] FIELD_BYTES = new byte[FIELD_COUNT][];
+
+	static {
+		for(int i = 0; i < FIELD_COUNT; i++) {
+			FIELD_BYTES[i] = FIELDS[i].getBytes(UTF8);
+		}
+	}
+
+	/** The mapper used for escaped strings */
+	private final ObjectMapper mapper;
+	/** The reader for the tags field */
+	private final ObjectReader tagsReader;
+	/** The reader for the friends field */
+	private final ObjectReader friendsReader;
+
+	/**
+	 * Creates a new LazyPersonIndexer
+	 * @param mapper The mapper to resolve the readers for the nested fields from
+	 */
+	public LazyPersonIndexer(final ObjectMapper mapper) {
+		if(mapper==null) throw new IllegalArgumentException("The passed mapper was null");
+		this.mapper = mapper;
+		tagsReader = mapper.reader(mapper.getTypeFactory().constructCollectionType(Set.class, String.class));
+		friendsReader = mapper.reader(Friend[].class);
+	}
+
+	/**
+	 * Indexes the passed buffer containing a JSON array of persons. The buffer's indexes are not modified
+	 * and the buffer must not be changed while the returned views are in use.
+	 * @param json The buffer to index
+	 * @return a lazy view of each person in document order
+	 */
+	public LazyPerson[] index(final ChannelBuffer json) {
+		if(json==null || json.readableBytes()<2) throw new IllegalArgumentException("Incoming data was null or empty");
+		final int end = json.writerIndex();
+		int i = skipWhitespace(json, json.readerIndex(), end);
+		if(json.getByte(i)!='[') throw new IllegalArgumentException("Expected an array at index " + i);
+		// the element bounds fall out of the same walk that records the field offsets
+		int[] offsets = new int[JsonBoundaryScanner.INITIAL_ELEMENTS * SLOTS];
+		int count = 0;
+		i = skipWhitespace(json, i + 1, end);
+		while(i < end && json.getByte(i)!=']') {
+			final int base = count * SLOTS;
+			if(base + SLOTS > offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+			Arrays.fill(offsets, base, base + SLOTS, -1);
+			i = skipWhitespace(json, indexRecord(json, i, end, offsets, base), end);
+			count++;
+			if(i < end && json.getByte(i)==',') i = skipWhitespace(json, i + 1, end);
+		}
+		if(i >= end) throw new IllegalArgumentException("Unterminated JSON array");
+		final LazyPerson[] persons = new LazyPerson[count];
+		for(int p = 0; p < count; p++) {
+			persons[p] = new LazyPerson(this, json, offsets, p * SLOTS);
+		}
+		return persons;
+	}
+
+	/**
+	 * Records the value offsets of the known fields of the object starting at the passed index
+	 * @param json The buffer
+	 * @param start The index of the opening brace
+	 * @param end The index just past the last readable byte
+	 * @param offsets The offset table
+	 * @param base The first slot of this record in the offset table
+	 * @return the index just past the closing brace
+	 */
+	private static int indexRecord(final ChannelBuffer json, final int start, final int end, final int[] offsets, final int base) {
+		if(json.getByte(start)!='{') throw new IllegalArgumentException("Expected an object at index " + start);
+		int expected = 0;
+		int i = skipWhitespace(json, start + 1, end);
+		while(i < end && json.getByte(i)!='}') {
+			if(json.getByte(i)!='"') throw new IllegalArgumentException("Expected a field name at index " + i);
+			final int keyEnd = endOfString(json, i, end);
+			final int field = match(json, i + 1, keyEnd, expected);
+			i = skipWhitespace(json, keyEnd + 1, end);
+			if(json.getByte(i)!=':') throw new IllegalArgumentException("Expected ':' at index " + i);
+			i = skipWhitespace(json, i + 1, end);
+			final int valueEnd = endOfValue(json, i, end);
+			if(field!=-1) {
+				offsets[base + field*2] = i;
+				offsets[base + field*2 + 1] = valueEnd;
+				expected = field + 1;
+			}
+			i = skipWhitespace(json, valueEnd, end);
+			if(i < end && json.getByte(i)==',') i = skipWhitespace(json, i + 1, end);
+		}
+		if(i >= end) throw new IllegalArgumentException("Unterminated object at index " + start);
+		return i + 1;
+	}
+
+	/**
+	 * Returns the ordinal of the field name between the passed indexes, trying the expected field first
+	 * since records almost always keep the same field order
+	 */
+	private static int match(final ChannelBuffer json, final int from, final int to, final int expected) {
+		if(expected < FIELD_COUNT && matches(json, from, to, FIELD_BYTES[expected])) return expected;
+		for(int f = 0; f < FIELD_COUNT; f++) {
+			if(f!=expected && matches(json, from, to, FIELD_BYTES[f])) return f;
+		}
+		return -1;
+	}
+
+	private static boolean matches(final ChannelBuffer json, final int from, final int to, final byte[] name) {
+		if(to - from != name.length) return false;
+		for(int i = 0; i < name.length; i++) {
+			if(json.getByte(from + i)!=name[i]) return false;
+		}
+		return true;
+	}
+
+	private static int skipWhitespace(final ChannelBuffer json, int i, final int end) {
+		while(i < end) {
+			final byte b = json.getByte(i);
+			if(b!=' ' && b!='\n' && b!='\r' && b!='\t') break;
+			i++;
+		}
+		return i;
+	}
+
+	/** Returns the index of the closing quote of the string starting at the passed index */
+	private static int endOfString(final ChannelBuffer json, final int start, final int end) {
+		for(int i = start + 1; i < end; i++) {
+			final byte b = json.getByte(i);
+			if(b=='\\') i++;
+			else if(b=='"') return i;
+		}
+		throw new IllegalArgumentException("Unterminated string at index " + start);
+	}
+
+	/** Returns the index just past the end of the value starting at the passed index */
+	private static int endOfValue(final ChannelBuffer json, final int start, final int end) {
+		final byte first = json.getByte(start);
+		if(first=='"') return endOfString(json, start, end) + 1;
+		if(first=='{' || first=='[') {
+			int depth = 0;
+			for(int i = start; i < end; i++) {
+				final byte b = json.getByte(i);
+				if(b=='"') {
+					i = endOfString(json, i, end);
+				} else if(b=='{' || b=='[') {
+					depth++;
+				} else if(b=='}' || b==']') {
+					if(--depth==0) return i + 1;
+				}
+			}
+			throw new IllegalArgumentException("Unterminated value at index " + start);
+		}
+		int i = start;
+		while(i < end) {
+			final byte b = json.getByte(i);
+			if(b==',' || b=='}' || b==']' || b==' ' || b=='\n' || b=='\r' || b=='\t') break;
+			i++;
+		}
+		return i;
+	}
+
+	// ==========================================================================================
+	//   Value decoders, called by the LazyPerson getters
+	// ==========================================================================================
+
+	String decodeString(final ChannelBuffer json, final int start, final int end) {
+		if(json.getByte(start)=='n') return null;
+		final int len = end - start - 2;
+		if(json.indexOf(start + 1, end - 1, (byte)'\\')==-1) {
+			return json.toString(start + 1, len, UTF8);
+		}
+		JsonParser parser = null;
+		try {
+			parser = mapper.getFactory().createParser(new ChannelBufferInputStream(json.slice(start, end - start)));
+			parser.nextToken();
+			return parser.getText();
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to decode string at index " + start, ex);
+		} finally {
+			if(parser!=null) try { parser.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	static long decodeLong(final ChannelBuffer json, final int start, final int end) {
+		int i = start;
+		final boolean negative = json.getByte(i)=='-';
+		if(negative) i++;
+		long value = 0;
+		for(; i < end; i++) {
+			final int digit = json.getByte(i) - '0';
+			if(digit < 0 || digit > 9) throw new NumberFormatException("Invalid integer at index " + start);
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+
+	static float decodeFloat(final ChannelBuffer json, final int start, final int end) {
+		return Float.parseFloat(json.toString(start, end - start, ASCII));
+	}
+
+	static boolean decodeBoolean(final ChannelBuffer json, final int start) {
+		return json.getByte(start)=='t';
+	}
+
+	Date decodeDate(final ChannelBuffer json, final int start, final int end) {
+		return PersonDates.parse(decodeString(json, start, end));
+	}
+
+	Set<String> decodeTags(final ChannelBuffer json, final int start, final int end) {
+		return read(tagsReader, json, start, end);
+	}
+
+	Friend[] decodeFriends(final ChannelBuffer json, final int start, final int end) {
+		return read(friendsReader, json, start, end);
+	}
+
+	private static <T> T read(final ObjectReader reader, final ChannelBuffer json, final int start, final int end) {
+		try {
+			if(json.hasArray()) {
+				return reader.readValue(json.array(), json.arrayOffset() + start, end - start);
+			}
+			return reader.readValue(new ChannelBufferInputStream(json.slice(start, end - start)));
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to decode value at index " + start, ex);
+		}
+	}
+
+}
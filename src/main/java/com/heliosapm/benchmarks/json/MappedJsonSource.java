@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.heliosapm.utils.io.NIOHelper;
+
+/**
+ * <p>Title: MappedJsonSource</p>
+ * <p>Description: File backed JSON source which maps an uncompressed JSON file with {@link FileChannel#map(MapMode, long, long)}.
+ * Files up to 2GB can be viewed as a single direct {@link ChannelBuffer}. Files of any size can be streamed
+ * through a sliding window of mapped regions, so heap use stays bounded even for files larger than RAM.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.MappedJsonSource</code></p>
+ */
+
+public class MappedJsonSource implements Closeable {
+	/** The default size of the regions mapped when streaming */
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	/** The mapped file */
+	private final File file;
+	/** The random access file the channel comes from */
+	private final RandomAccessFile raf;
+	/** The file channel */
+	private final FileChannel channel;
+	/** The file size */
+	private final long size;
+	/** The size of the regions mapped when streaming */
+	private final int windowSize;
+	/** The whole file mapping, lazily created */
+	private MappedByteBuffer mapped = null;
+	/** The whole file mapping as a channel buffer */
+	private ChannelBuffer buffer = null;
+
+	/**
+	 * Creates a new MappedJsonSource
+	 * @param file The uncompressed JSON file to map
+	 * @param windowSize The size of the regions mapped when streaming
+	 */
+	public MappedJsonSource(final File file, final int windowSize) {
+		if(file==null) throw new IllegalArgumentException("The passed file was null");
+		if(!file.canRead()) throw new IllegalArgumentException("Cannot read file [" + file + "]");
+		if(windowSize < 1) throw new IllegalArgumentException("Invalid window size: " + windowSize);
+		this.file = file;
+		this.windowSize = windowSize;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			channel = raf.getChannel();
+			size = channel.size();
+		} catch (IOException iex) {
+			throw new RuntimeException("Failed to open file [" + file + "]", iex);
+		}
+	}
+
+	/**
+	 * Creates a new MappedJsonSource with the default window size
+	 * @param file The uncompressed JSON file to map
+	 */
+	public MappedJsonSource(final File file) {
+		this(file, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Returns the whole file as a direct channel buffer over a single mapping.
+	 * The mapping is created on the first call and shared, so callers should use a duplicate.
+	 * @return the mapped channel buffer
+	 */
+	public synchronized ChannelBuffer asChannelBuffer() {
+		if(size > Integer.MAX_VALUE) throw new IllegalStateException("File [" + file + "] is too large for a single ChannelBuffer (" + size + " bytes). Use openStream()");
+		if(buffer==null) {
+			try {
+				mapped = channel.map(MapMode.READ_ONLY, 0, size);
+			} catch (IOException iex) {
+				throw new RuntimeException("Failed to map file [" + file + "]", iex);
+			}
+			buffer = ChannelBuffers.wrappedBuffer(mapped);
+		}
+		return buffer;
+	}
+
+	/**
+	 * Opens a stream over the file which maps one window at a time, releasing each window once it has been read
+	 * @return the input stream
+	 */
+	public InputStream openStream() {
+		return new WindowedInputStream();
+	}
+
+	/**
+	 * Returns the file size in bytes
+	 * @return the file size in bytes
+	 */
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Returns the mapped file
+	 * @return the mapped file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public synchronized void close() {
+		buffer = null;
+		if(mapped!=null) try { NIOHelper.clean(mapped); } catch (Exception x) {/* No Op */}
+		mapped = null;
+		try { channel.close(); } catch (Exception x) {/* No Op */}
+		try { raf.close(); } catch (Exception x) {/* No Op */}
+	}
+
+	/**
+	 * <p>Title: WindowedInputStream</p>
+	 * <p>Description: Input stream which maps the file one window at a time</p>
+	 * <p><code>com.heliosapm.benchmarks.json.MappedJsonSource.WindowedInputStream</code></p>
+	 */
+	class WindowedInputStream extends InputStream {
+		/** The file offset of the next window */
+		private long position = 0L;
+		/** The current window */
+		private MappedByteBuffer window = null;
+
+		private boolean nextWindow() throws IOException {
+			if(window!=null && window.hasRemaining()) return true;
+			release();
+			if(position >= size) return false;
+			final long length = Math.min(windowSize, size - position);
+			window = channel.map(MapMode.READ_ONLY, position, length);
+			position += length;
+			return true;
+		}
+
+		private void release() {
+			if(window!=null) {
+				try { NIOHelper.clean(window); } catch (Exception x) {/* No Op */}
+				window = null;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.io.InputStream#read()
+		 */
+		@Override
+		public int read() throws IOException {
+			if(!nextWindow()) return -1;
+			return window.get() & 0xFF;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.io.InputStream#read(byte[], int, int)
+		 */
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if(len==0) return 0;
+			if(!nextWindow()) return -1;
+			final int chunk = Math.min(len, window.remaining());
+			window.get(b, off, chunk);
+			return chunk;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.io.InputStream#available()
+		 */
+		@Override
+		public int available() {
+			return window==null ? 0 : window.remaining();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.io.InputStream#close()
+		 */
+		@Override
+		public void close() {
+			release();
+			position = size;
+		}
+	}
+
+}
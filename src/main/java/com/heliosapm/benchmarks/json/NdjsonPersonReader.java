@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+import com.heliosapm.benchmarks.json.PersonStreamReader.PersonHandler;
+
+/**
+ * <p>Title: NdjsonPersonReader</p>
+ * <p>Description: Reader for newline delimited JSON (JSON Lines) where each line holds one person object.
+ * Line boundaries are found directly in the {@link ChannelBuffer} and each line is bound from a zero copy slice,
+ * either on the calling thread or, when an executor is supplied, in batches of lines fanned out to the executor.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.NdjsonPersonReader</code></p>
+ */
+
+public class NdjsonPersonReader {
+	/** The default number of lines bound by one executor task */
+	public static final int DEFAULT_BATCH_SIZE = 128;
+
+	/** The codec each line is bound with */
+	private final PersonCodec codec;
+	/** The executor batches are bound on, or null to bind on the calling thread */
+	private final ExecutorService executor;
+	/** The number of lines bound by one executor task */
+	private final int batchSize;
+
+	/**
+	 * Creates a new NdjsonPersonReader
+	 * @param codec The codec each line is bound with
+	 * @param executor The executor batches are bound on, or null to bind on the calling thread
+	 * @param batchSize The number of lines bound by one executor task
+	 */
+	public NdjsonPersonReader(final PersonCodec codec, final ExecutorService executor, final int batchSize) {
+		if(codec==null) throw new IllegalArgumentException("The passed codec was null");
+		if(batchSize < 1) throw new IllegalArgumentException("Invalid batch size: " + batchSize);
+		this.codec = codec;
+		this.executor = executor;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Creates a new NdjsonPersonReader which binds on the calling thread
+	 * @param codec The codec each line is bound with
+	 */
+	public NdjsonPersonReader(final PersonCodec codec) {
+		this(codec, null, DEFAULT_BATCH_SIZE);
+	}
+
+	/**
+	 * Binds each line of the passed buffer on the calling thread, passing each person to the handler
+	 * until the buffer is exhausted or the handler returns false. The lines are found by
+	 * {@link JsonBoundaryScanner#lineBounds(ChannelBuffer)}, as for {@link #readAll(ChannelBuffer)}.
+	 * The buffer's indexes are not modified.
+	 * @param ndjson The buffer containing the JSON lines
+	 * @param handler The handler to pass each person to
+	 * @return the number of persons passed to the handler
+	 */
+	public int read(final ChannelBuffer ndjson, final PersonHandler handler) {
+		if(handler==null) throw new IllegalArgumentException("The passed handler was null");
+		final int[] bounds = JsonBoundaryScanner.lineBounds(ndjson);
+		final int lines = bounds.length / 2;
+		for(int i = 0; i < lines; i++) {
+			final int start = bounds[i*2];
+			if(!handler.onPerson(i, codec.readPerson(ndjson.slice(start, bounds[i*2+1] - start)))) return i + 1;
+		}
+		return lines;
+	}
+
+	/**
+	 * Binds all the lines of the passed buffer. The buffer's indexes are not modified.
+	 * @param ndjson The buffer containing the JSON lines
+	 * @return the persons in line order
+	 */
+	public Person[] readAll(final ChannelBuffer ndjson) {
+		final int[] bounds = JsonBoundaryScanner.lineBounds(ndjson);
+		final Person[] persons = new Person[bounds.length / 2];
+		if(executor==null || persons.length <= batchSize) {
+			bind(ndjson, bounds, persons, 0, persons.length);
+			return persons;
+		}
+		final List<Future<Void>> futures = new ArrayList<Future<Void>>(persons.length / batchSize + 1);
+		int from = 0;
+		// the calling thread binds the last batch itself
+		for(; from + batchSize < persons.length; from += batchSize) {
+			final int batchFrom = from;
+			final int batchTo = from + batchSize;
+			futures.add(executor.submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					bind(ndjson, bounds, persons, batchFrom, batchTo);
+					return null;
+				}
+			}));
+		}
+		bind(ndjson, bounds, persons, from, persons.length);
+		try {
+			for(Future<Void> f: futures) {
+				f.get();
+			}
+		} catch (ExecutionException eex) {
+			throw new RuntimeException("Failed to bind JSON lines", eex.getCause());
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while binding JSON lines", iex);
+		}
+		return persons;
+	}
+
+	/**
+	 * Returns the executor batches are bound on
+	 * @return the executor, or null if lines are bound on the calling thread
+	 */
+	public ExecutorService getExecutor() {
+		return executor;
+	}
+
+	private void bind(final ChannelBuffer ndjson, final int[] bounds, final Person[] persons, final int from, final int to) {
+		for(int i = from; i < to; i++) {
+			final int start = bounds[i*2];
+			persons[i] = codec.readPerson(ndjson.slice(start, bounds[i*2+1] - start));
+		}
+	}
+
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.DirectChannelBufferFactory;
+import org.jboss.netty.buffer.HeapChannelBufferFactory;
+
+import com.heliosapm.benchmarks.json.JSONUnmarshalling.BufferType;
+import com.heliosapm.benchmarks.json.JSONUnmarshalling.Direction;
+import com.heliosapm.utils.config.ConfigurationHelper;
+
+/**
+ * <p>Title: OpenLoopDriver</p>
+ * <p>Description: Issues whole document parse or serialize requests at a fixed arrival rate and reports the
+ * latency percentiles per payload. Unlike the closed loop JMH benchmarks, a slow request does not delay the
+ * requests scheduled after it: each request has an intended start time on a fixed schedule and its response time
+ * is measured from that intended time, so time spent queued behind a stall (a GC pause, a slow document) is counted
+ * instead of being omitted. The service time, measured from the actual start, is reported alongside as the
+ * uncorrected view.</p>
+ * <p>The rate is split evenly over the driver threads, each with its own schedule offset from the others.
+ * A rate the threads cannot sustain shows up as a growing response time and a high late percentage,
+ * and requests still unissued when the run ends are recorded as waiting until then.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.OpenLoopDriver</code></p>
+ * <p>Usage: <b><code>OpenLoopDriver [payload ...]</code></b> with the system properties
+ * <code>driver.rate</code> (requests per second, default 1000), <code>driver.threads</code> (default cores),
+ * <code>driver.direction</code> (READ or WRITE), <code>driver.buffer</code> (HEAP or DIRECT),
+ * <code>driver.warmup</code> and <code>driver.seconds</code>.</p>
+ */
+
+public class OpenLoopDriver {
+	/** The default requests per second */
+	public static final int DEFAULT_RATE = 1000;
+	/** The default warmup seconds, for which nothing is recorded */
+	public static final int DEFAULT_WARMUP = 10;
+	/** The default measured seconds */
+	public static final int DEFAULT_SECONDS = 30;
+	/** Waits longer than this are parked, shorter waits spin */
+	private static final long SPIN_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+	/** The reported percentiles */
+	private static final double[] PERCENTILES = {50D, 90D, 99D, 99.9D, 99.99D};
+
+	/** The operation direction */
+	private final Direction direction;
+	/** The requests per second over all threads */
+	private final int rate;
+	/** The number of driver threads */
+	private final int threads;
+	/** The buffer factory for writes */
+	private final ChannelBufferFactory factory;
+	/** Consumes the request results so they are not optimized away */
+	private volatile long sink = 0;
+
+	/**
+	 * Runs the driver over each payload
+	 * @param args The payloads, defaulting to the {@link JSONUnmarshalling#DATA} samples
+	 */
+	public static void main(final String[] args) {
+		final int rate = ConfigurationHelper.getIntSystemThenEnvProperty("driver.rate", DEFAULT_RATE);
+		final int threads = ConfigurationHelper.getIntSystemThenEnvProperty("driver.threads", ThreadScalingSweep.CORES);
+		final int warmup = ConfigurationHelper.getIntSystemThenEnvProperty("driver.warmup", DEFAULT_WARMUP);
+		final int seconds = ConfigurationHelper.getIntSystemThenEnvProperty("driver.seconds", DEFAULT_SECONDS);
+		final Direction direction = Direction.valueOf(ConfigurationHelper.getSystemThenEnvProperty("driver.direction", "READ").trim().toUpperCase());
+		final BufferType bufferType = BufferType.valueOf(ConfigurationHelper.getSystemThenEnvProperty("driver.buffer", "HEAP").trim().toUpperCase());
+		final List<String> payloads = args.length > 0 ? Arrays.asList(args) : new ArrayList<String>(JSONUnmarshalling.DATA);
+		final OpenLoopDriver driver = new OpenLoopDriver(direction, rate, threads, bufferType);
+		log("\n\t============================================\n\tOpen Loop %s: %s req/s on %s threads, %s buffers, %ss warmup, %ss measured\n\t============================================",
+				direction, rate, threads, bufferType, warmup, seconds);
+		for(String payload: payloads) {
+			final ChannelBuffer json = JSONUnmarshalling.sampleBuffer(payload, bufferType);
+			final Person[] persons = JSONUnmarshalling.deserPersons(json.duplicate());
+			driver.run(json, persons, TimeUnit.SECONDS.toNanos(warmup));
+			final Run run = driver.run(json, persons, TimeUnit.SECONDS.toNanos(seconds));
+			run.report(payload, rate);
+		}
+	}
+
+	/**
+	 * Creates a new OpenLoopDriver
+	 * @param direction The operation direction
+	 * @param rate The requests per second over all threads
+	 * @param threads The number of driver threads
+	 * @param bufferType The type of buffer writes go to
+	 */
+	public OpenLoopDriver(final Direction direction, final int rate, final int threads, final BufferType bufferType) {
+		if(direction==null) throw new IllegalArgumentException("The passed direction was null");
+		if(rate < 1) throw new IllegalArgumentException("Invalid rate: " + rate);
+		if(threads < 1) throw new IllegalArgumentException("Invalid thread count: " + threads);
+		// each thread's schedule advances in whole nanos, so it cannot issue more than one request per nano
+		if(TimeUnit.SECONDS.toNanos(threads) / rate < 1) throw new IllegalArgumentException("Rate " + rate + " exceeds one request per nanosecond on each of " + threads + " threads");
+		this.direction = direction;
+		this.rate = rate;
+		this.threads = threads;
+		factory = bufferType==BufferType.HEAP ? HeapChannelBufferFactory.getInstance() : DirectChannelBufferFactory.getInstance();
+	}
+
+	/**
+	 * Issues requests at the configured rate for the passed duration
+	 * @param json The JSON document parsed by reads
+	 * @param persons The persons serialized by writes
+	 * @param durationNanos The run duration in nanos
+	 * @return the run's combined latencies
+	 */
+	public Run run(final ChannelBuffer json, final Person[] persons, final long durationNanos) {
+		final long interval = TimeUnit.SECONDS.toNanos(threads) / rate;
+		final CountDownLatch done = new CountDownLatch(threads);
+		final Run[] runs = new Run[threads];
+		// a short delay lets every thread start before its first intended request
+		final long start = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+		final long end = start + durationNanos;
+		for(int t = 0; t < threads; t++) {
+			final int index = t;
+			final Run run = new Run();
+			runs[t] = run;
+			final Thread thread = new Thread("OpenLoopDriver#" + t) {
+				@Override
+				public void run() {
+					try {
+						drive(json, persons, start + interval * index / threads, interval, end, run);
+					} finally {
+						done.countDown();
+					}
+				}
+			};
+			thread.setDaemon(true);
+			thread.start();
+		}
+		try {
+			done.await();
+		} catch (InterruptedException iex) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted waiting for the driver threads", iex);
+		}
+		final Run total = new Run();
+		for(Run run: runs) total.add(run);
+		total.elapsed = durationNanos;
+		return total;
+	}
+
+	/**
+	 * Issues one thread's requests on its schedule
+	 */
+	private void drive(final ChannelBuffer json, final Person[] persons, final long first, final long interval, final long end, final Run run) {
+		final PersonCodec codec = JSONUnmarshalling.CODEC;
+		long result = 0;
+		for(long intended = first; intended < end; intended += interval) {
+			long wait;
+			while((wait = intended - System.nanoTime()) > 0) {
+				if(wait > SPIN_NANOS) LockSupport.parkNanos(wait - SPIN_NANOS);
+			}
+			final long started = System.nanoTime();
+			if(started >= end) {
+				// overloaded: the requests still scheduled were never issued, so count them as waiting until now
+				for(; intended < end; intended += interval) {
+					run.response.recordValue(started - intended);
+					run.late++;
+					run.unissued++;
+				}
+				break;
+			}
+			if(direction==Direction.READ) {
+				result += codec.readPersons(json.duplicate()).length;
+			} else {
+				result += codec.write(factory, persons).readableBytes();
+			}
+			final long completed = System.nanoTime();
+			run.response.recordValue(completed - intended);
+			run.service.recordValue(completed - started);
+			if(started - intended > interval) run.late++;
+		}
+		sink += result;
+	}
+
+	/**
+	 * <p>Title: Run</p>
+	 * <p>Description: The latencies recorded by a driver run</p>
+	 */
+	public static class Run {
+		/** Latency from the intended start, corrected for coordinated omission */
+		final LatencyHistogram response = new LatencyHistogram();
+		/** Latency from the actual start */
+		final LatencyHistogram service = new LatencyHistogram();
+		/** The number of requests started more than one interval behind schedule */
+		long late = 0;
+		/** The number of scheduled requests not issued by the end of the run */
+		long unissued = 0;
+		/** The run duration in nanos */
+		long elapsed = 0;
+
+		/**
+		 * Returns the latencies measured from each request's intended start
+		 * @return the response time histogram in nanos
+		 */
+		public LatencyHistogram getResponse() {
+			return response;
+		}
+
+		/**
+		 * Returns the latencies measured from each request's actual start
+		 * @return the service time histogram in nanos
+		 */
+		public LatencyHistogram getService() {
+			return service;
+		}
+
+		void add(final Run other) {
+			response.add(other.response);
+			service.add(other.service);
+			late += other.late;
+			unissued += other.unissued;
+		}
+
+		/**
+		 * Prints the percentiles of this run
+		 * @param payload The payload name
+		 * @param rate The target rate
+		 */
+		void report(final String payload, final int rate) {
+			final long count = response.getTotalCount();
+			final double achieved = elapsed==0 ? 0D : service.getTotalCount() * 1E9D / elapsed;
+			log("\n%s: %s requests, target %s/s, achieved %.1f/s, %.2f%% started late, %s not issued",
+					payload, count, rate, achieved, count==0 ? 0D : late * 100D / count, unissued);
+			final StringBuilder header = new StringBuilder(String.format("%-10s %10s", "\u00B5" + "s", "mean"));
+			for(double p: PERCENTILES) header.append(String.format(" %10s", "p" + (p==Math.rint(p) ? String.valueOf((long)p) : String.valueOf(p))));
+			header.append(String.format(" %10s", "max"));
+			log(header);
+			log(row("response", response));
+			log(row("service", service));
+		}
+
+		private static String row(final String name, final LatencyHistogram h) {
+			final StringBuilder b = new StringBuilder(String.format("%-10s %10.1f", name, h.getMean() / 1000D));
+			for(double p: PERCENTILES) b.append(String.format(" %10.1f", h.getValueAtPercentile(p) / 1000D));
+			b.append(String.format(" %10.1f", h.getMaxValue() / 1000D));
+			return b.toString();
+		}
+	}
+
+	public static void log(final Object fmt, final Object...args) {
+		System.out.println(String.format(fmt.toString(), args));
+	}
+
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * <p>Title: ParallelPersonParser</p>
+ * <p>Description: Parses a large JSON array of persons on a {@link ForkJoinPool}. The raw bytes are scanned once
+ * for the element boundaries, each element is carved out as a zero copy {@link ChannelBuffer#slice(int, int)},
+ * and ranges of slices are bound in parallel straight into their position in the result array.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.ParallelPersonParser</code></p>
+ */
+
+public class ParallelPersonParser {
+	/** The default minimum number of persons bound by one task */
+	public static final int DEFAULT_MIN_BATCH = 64;
+
+	/** The codec each slice is bound with */
+	private final PersonCodec codec;
+	/** The pool the binding tasks run on */
+	private final ForkJoinPool pool;
+	/** The number of persons below which a task binds its range instead of splitting */
+	private final int minBatch;
+
+	/**
+	 * Creates a new ParallelPersonParser
+	 * @param codec The codec each slice is bound with
+	 * @param pool The pool the binding tasks run on
+	 * @param minBatch The number of persons below which a task binds its range instead of splitting
+	 */
+	public ParallelPersonParser(final PersonCodec codec, final ForkJoinPool pool, final int minBatch) {
+		if(codec==null) throw new IllegalArgumentException("The passed codec was null");
+		if(pool==null) throw new IllegalArgumentException("The passed pool was null");
+		if(minBatch < 1) throw new IllegalArgumentException("Invalid min batch: " + minBatch);
+		this.codec = codec;
+		this.pool = pool;
+		this.minBatch = minBatch;
+	}
+
+	/**
+	 * Parses the passed buffer containing a JSON array of persons. The buffer's indexes are not modified.
+	 * @param json The buffer to parse
+	 * @return the persons in document order
+	 */
+	public Person[] parse(final ChannelBuffer json) {
+		final int[] bounds = JsonBoundaryScanner.elementBounds(json);
+		final Person[] persons = new Person[bounds.length / 2];
+		pool.invoke(new BindTask(json, bounds, persons, 0, persons.length));
+		return persons;
+	}
+
+	/**
+	 * Returns the pool the binding tasks run on
+	 * @return the pool
+	 */
+	public ForkJoinPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * <p>Title: BindTask</p>
+	 * <p>Description: Binds a range of element slices, splitting in half while the range is larger than the minimum batch</p>
+	 */
+	private class BindTask extends RecursiveAction {
+		private static final long serialVersionUID = -2183036787469227366L;
+		private final ChannelBuffer json;
+		private final int[] bounds;
+		private final Person[] persons;
+		private final int from;
+		private final int to;
+
+		BindTask(final ChannelBuffer json, final int[] bounds, final Person[] persons, final int from, final int to) {
+			this.json = json;
+			this.bounds = bounds;
+			this.persons = persons;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from <= minBatch) {
+				for(int i = from; i < to; i++) {
+					final int start = bounds[i*2];
+					persons[i] = codec.readPerson(json.slice(start, bounds[i*2+1] - start));
+				}
+				return;
+			}
+			final int mid = (from + to) >>> 1;
+			invokeAll(new BindTask(json, bounds, persons, from, mid), new BindTask(json, bounds, persons, mid, to));
+		}
+	}
+
+}
@@ -0,0 +1,407 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.nio.charset.Charset;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+/**
+ * <p>Title: PersonCache</p>
+ * <p>Description: Bounded, read-through, off-heap cache of persons keyed by guid. Values are held as
+ * {@link PersonFlyweight} records in fixed size slots of direct buffers, so cached persons add nothing to the
+ * heap the collector has to trace. A lookup that misses loads the person's JSON from the {@link PersonSource},
+ * transcodes it (the only parse) and caches the record. A hit decodes the record into a new {@link Person}.</p>
+ * <p>The cache is split into lock striped segments, each an open addressing hash table of <code>[hash][slot]</code>
+ * entries and a slot area, both in direct buffers. Once a segment's slots are full, the victim is chosen with
+ * the CLOCK (second chance) policy. Persons whose record is larger than a slot are returned but not cached.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonCache</code></p>
+ */
+
+public class PersonCache {
+	/** The default slot size in bytes */
+	public static final int DEFAULT_SLOT_SIZE = 1024;
+	/** The default number of segments */
+	public static final int DEFAULT_SEGMENTS = 16;
+
+	/** The slot header: <code>[int key hash][byte reference bit]</code>, padded to 8 bytes */
+	static final int SLOT_HEADER = 8;
+	static final int SLOT_REF = 4;
+	/** The size of a hash table entry: <code>[int key hash][int slot + 1, or 0 if empty]</code> */
+	static final int ENTRY_SIZE = 8;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * <p>Title: PersonSource</p>
+	 * <p>Description: Loads the JSON of the person with a given guid when the cache misses</p>
+	 */
+	public interface PersonSource {
+		/**
+		 * Returns the JSON object of the person with the passed guid
+		 * @param guid The guid
+		 * @return the buffer containing the JSON, or null if the person does not exist
+		 */
+		public ChannelBuffer load(String guid);
+	}
+
+	/** The source misses are loaded from */
+	private final PersonSource source;
+	/** The segments */
+	private final Segment[] segments;
+	/** The shift and mask selecting a segment from the high bits of a hash */
+	private final int segmentShift, segmentMask;
+	/** The maximum number of cached persons */
+	private final int capacity;
+
+	/**
+	 * Creates a new PersonCache with the default slot size and number of segments
+	 * @param factory The factory parsers are created from
+	 * @param source The source misses are loaded from
+	 * @param capacity The maximum number of cached persons
+	 */
+	public PersonCache(final JsonFactory factory, final PersonSource source, final int capacity) {
+		this(factory, source, capacity, DEFAULT_SLOT_SIZE, DEFAULT_SEGMENTS);
+	}
+
+	/**
+	 * Creates a new PersonCache
+	 * @param factory The factory parsers are created from
+	 * @param source The source misses are loaded from
+	 * @param capacity The maximum number of cached persons
+	 * @param slotSize The size of each slot in bytes, bounding the size of a cached record
+	 * @param segments The number of segments, rounded up to a power of 2 and no more than the capacity
+	 */
+	public PersonCache(final JsonFactory factory, final PersonSource source, final int capacity, final int slotSize, final int segments) {
+		if(factory==null) throw new IllegalArgumentException("The passed factory was null");
+		if(source==null) throw new IllegalArgumentException("The passed source was null");
+		if(capacity < 1) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		if(slotSize <= SLOT_HEADER + PersonFlyweight.HEADER_SIZE) throw new IllegalArgumentException("Invalid slot size: " + slotSize);
+		if(segments < 1) throw new IllegalArgumentException("Invalid segment count: " + segments);
+		this.source = source;
+		int segs = 1, bits = 0;
+		while(segs < segments && (segs << 1) <= capacity) {
+			segs <<= 1;
+			bits++;
+		}
+		segmentShift = 32 - bits;
+		segmentMask = segs - 1;
+		this.segments = new Segment[segs];
+		int remaining = capacity;
+		for(int i = 0; i < segs; i++) {
+			final int slots = remaining / (segs - i);
+			if((long)slots * slotSize > Integer.MAX_VALUE) throw new IllegalArgumentException("Segment too large: " + slots + " slots of " + slotSize + " bytes");
+			this.segments[i] = new Segment(factory, slots, slotSize);
+			remaining -= slots;
+		}
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Returns the person with the passed guid, loading, parsing and caching it on a miss
+	 * @param guid The guid
+	 * @return the person or null if the source does not have it
+	 */
+	public Person get(final String guid) {
+		return lookup(guid, true);
+	}
+
+	/**
+	 * Returns the person with the passed guid if it is cached
+	 * @param guid The guid
+	 * @return the person or null if not cached
+	 */
+	public Person getIfPresent(final String guid) {
+		return lookup(guid, false);
+	}
+
+	private Person lookup(final String guid, final boolean load) {
+		if(guid==null) throw new IllegalArgumentException("The passed guid was null");
+		final int hash = hash(guid);
+		return segments[(hash >>> segmentShift) & segmentMask].get(guid, hash, guid.getBytes(UTF8), load);
+	}
+
+	private static int hash(final String guid) {
+		final int h = guid.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Removes every cached person. The statistics are not reset.
+	 */
+	public void clear() {
+		for(Segment s: segments) s.clear();
+	}
+
+	/**
+	 * Resets the hit, miss, eviction and rejection counts
+	 */
+	public void resetStats() {
+		for(Segment s: segments) s.resetStats();
+	}
+
+	/**
+	 * Returns the number of cached persons
+	 * @return the number of cached persons
+	 */
+	public int size() {
+		int size = 0;
+		for(Segment s: segments) size += s.size();
+		return size;
+	}
+
+	/**
+	 * Returns the maximum number of cached persons
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached person
+	 * @return the hit count
+	 */
+	public long getHits() {
+		long n = 0;
+		for(Segment s: segments) n += s.stat(0);
+		return n;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a cached person
+	 * @return the miss count
+	 */
+	public long getMisses() {
+		long n = 0;
+		for(Segment s: segments) n += s.stat(1);
+		return n;
+	}
+
+	/**
+	 * Returns the number of persons evicted to make room for another
+	 * @return the eviction count
+	 */
+	public long getEvictions() {
+		long n = 0;
+		for(Segment s: segments) n += s.stat(2);
+		return n;
+	}
+
+	/**
+	 * Returns the number of loaded persons not cached because their record did not fit in a slot
+	 * @return the rejection count
+	 */
+	public long getRejected() {
+		long n = 0;
+		for(Segment s: segments) n += s.stat(3);
+		return n;
+	}
+
+	/**
+	 * Returns the ratio of hits to lookups
+	 * @return the hit ratio, or 0 if there have been no lookups
+	 */
+	public double getHitRatio() {
+		final long hits = getHits(), total = hits + getMisses();
+		return total==0 ? 0D : (double)hits / total;
+	}
+
+	/**
+	 * Returns the number of direct memory bytes allocated by the cache
+	 * @return the off-heap size in bytes
+	 */
+	public long getOffHeapBytes() {
+		long n = 0;
+		for(Segment s: segments) n += s.table.capacity() + s.slots.capacity();
+		return n;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return String.format("PersonCache [size:%s/%s, hits:%s, misses:%s, ratio:%.3f, evictions:%s, rejected:%s]",
+			size(), capacity, getHits(), getMisses(), getHitRatio(), getEvictions(), getRejected());
+	}
+
+	/**
+	 * <p>Title: Segment</p>
+	 * <p>Description: One lock stripe of the cache. All access is synchronized on the segment.</p>
+	 */
+	private final class Segment {
+		/** The hash table */
+		final ChannelBuffer table;
+		/** The hash table mask */
+		final int mask;
+		/** The slot area */
+		final ChannelBuffer slots;
+		/** The number of slots */
+		final int slotCount;
+		/** The size of a slot in bytes */
+		final int slotSize;
+		/** Transcodes loaded JSON into {@link #scratch} */
+		final PersonRecordWriter writer;
+		/** Holds the record of a loaded person until it is cached */
+		final ChannelBuffer scratch;
+		final PersonFlyweight fw = new PersonFlyweight();
+		/** The number of slots in use */
+		int used = 0;
+		/** The CLOCK hand */
+		int hand = 0;
+		long hits = 0, misses = 0, evictions = 0, rejected = 0;
+
+		Segment(final JsonFactory factory, final int slotCount, final int slotSize) {
+			this.slotCount = slotCount;
+			this.slotSize = slotSize;
+			int buckets = 2;
+			while(buckets < slotCount * 2) buckets <<= 1;
+			mask = buckets - 1;
+			table = ChannelBuffers.directBuffer(buckets * ENTRY_SIZE);
+			slots = ChannelBuffers.directBuffer(slotCount * slotSize);
+			writer = new PersonRecordWriter(factory);
+			scratch = ChannelBuffers.dynamicBuffer(slotSize);
+		}
+
+		synchronized Person get(final String guid, final int hash, final byte[] guidBytes, final boolean load) {
+			final int slot = find(hash, guidBytes);
+			if(slot >= 0) {
+				hits++;
+				final int base = slot * slotSize;
+				slots.setByte(base + SLOT_REF, 1);
+				return fw.wrap(slots, base + SLOT_HEADER).toPerson();
+			}
+			misses++;
+			if(!load) return null;
+			final ChannelBuffer json = source.load(guid);
+			if(json==null) return null;
+			scratch.clear();
+			writer.transcodePerson(json, scratch);
+			fw.wrap(scratch, 0);
+			if(!fw.stringEquals(PersonFlyweight.GUID, guidBytes)) throw new IllegalArgumentException("Source returned person [" + fw.getGuid() + "] for guid [" + guid + "]");
+			final Person p = fw.toPerson();
+			if(scratch.readableBytes() > slotSize - SLOT_HEADER) {
+				rejected++;
+			} else {
+				insert(hash);
+			}
+			return p;
+		}
+
+		/**
+		 * Returns the slot holding the passed key
+		 * @return the slot or -1 if not found
+		 */
+		private int find(final int hash, final byte[] guidBytes) {
+			for(int b = hash & mask; ; b = (b + 1) & mask) {
+				final int entry = b * ENTRY_SIZE;
+				final int slot = table.getInt(entry + 4) - 1;
+				if(slot < 0) return -1;
+				if(table.getInt(entry)==hash && fw.wrap(slots, slot * slotSize + SLOT_HEADER).stringEquals(PersonFlyweight.GUID, guidBytes)) return slot;
+			}
+		}
+
+		/**
+		 * Copies the record in {@link #scratch} into a free or evicted slot and indexes it
+		 */
+		private void insert(final int hash) {
+			final int slot;
+			if(used < slotCount) {
+				slot = used++;
+			} else {
+				slot = victim();
+				unindex(slot);
+				evictions++;
+			}
+			final int base = slot * slotSize;
+			slots.setInt(base, hash);
+			slots.setByte(base + SLOT_REF, 1);
+			slots.setBytes(base + SLOT_HEADER, scratch, 0, scratch.readableBytes());
+			int b = hash & mask;
+			while(table.getInt(b * ENTRY_SIZE + 4)!=0) b = (b + 1) & mask;
+			table.setInt(b * ENTRY_SIZE, hash);
+			table.setInt(b * ENTRY_SIZE + 4, slot + 1);
+		}
+
+		/**
+		 * Advances the CLOCK hand to the first slot not referenced since the last sweep,
+		 * clearing the reference bits it passes
+		 * @return the victim slot
+		 */
+		private int victim() {
+			while(true) {
+				final int slot = hand;
+				hand = (hand + 1) % slotCount;
+				final int ref = slot * slotSize + SLOT_REF;
+				if(slots.getByte(ref)==0) return slot;
+				slots.setByte(ref, 0);
+			}
+		}
+
+		/**
+		 * Removes the hash table entry of the passed slot, shifting back the entries after it in the probe sequence
+		 */
+		private void unindex(final int slot) {
+			int i = slots.getInt(slot * slotSize) & mask;
+			while(table.getInt(i * ENTRY_SIZE + 4)!=slot + 1) i = (i + 1) & mask;
+			int j = i;
+			while(true) {
+				j = (j + 1) & mask;
+				if(table.getInt(j * ENTRY_SIZE + 4)==0) break;
+				final int h = table.getInt(j * ENTRY_SIZE);
+				final int home = h & mask;
+				// entries whose home lies cyclically in (i, j] are still reachable
+				if(i <= j ? (i < home && home <= j) : (i < home || home <= j)) continue;
+				table.setInt(i * ENTRY_SIZE, h);
+				table.setInt(i * ENTRY_SIZE + 4, table.getInt(j * ENTRY_SIZE + 4));
+				i = j;
+			}
+			table.setInt(i * ENTRY_SIZE, 0);
+			table.setInt(i * ENTRY_SIZE + 4, 0);
+		}
+
+		synchronized void clear() {
+			table.setZero(0, table.capacity());
+			used = 0;
+			hand = 0;
+		}
+
+		synchronized void resetStats() {
+			hits = 0; misses = 0; evictions = 0; rejected = 0;
+		}
+
+		synchronized int size() {
+			return used;
+		}
+
+		synchronized long stat(final int which) {
+			switch(which) {
+				case 0: return hits;
+				case 1: return misses;
+				case 2: return evictions;
+				default: return rejected;
+			}
+		}
+	}
+
+}
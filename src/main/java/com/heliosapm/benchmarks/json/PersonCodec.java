@@ -0,0 +1,351 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.CompositeChannelBuffer;
+import org.jboss.netty.buffer.WrappedChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+
+/**
+ * <p>Title: PersonCodec</p>
+ * <p>Description: Codec facade for {@link Person} and {@link Friend} using {@link ObjectReader}s and {@link ObjectWriter}s
+ * resolved once up front, plus per-thread scratch buffers, so small high rate messages skip type resolution
+ * and intermediate allocation on each call.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonCodec</code></p>
+ */
+
+public class PersonCodec {
+	/** The initial size of the per-thread scratch buffers */
+	public static final int INITIAL_SCRATCH_SIZE = 8192;
+
+	/** Indicates if the parser can read a byte array range directly. The stax XML parser cannot without woodstox,
+	 * so XML is read through a stream over the range instead */
+	private final boolean rangeReads;
+	/** The factory line delimited generators are created from */
+	private final JsonFactory jsonFactory;
+	/** The pre-resolved reader for person arrays */
+	private final ObjectReader personsReader;
+	/** The pre-resolved reader for a single person */
+	private final ObjectReader personReader;
+	/** The pre-resolved reader for a single friend */
+	private final ObjectReader friendReader;
+	/** The pre-resolved writer for person arrays */
+	private final ObjectWriter personsWriter;
+	/** The pre-resolved writer for a single person */
+	private final ObjectWriter personWriter;
+	/** The pre-resolved writer for a single friend */
+	private final ObjectWriter friendWriter;
+
+	/** The per-thread scratch state */
+	private final ThreadLocal<CodecContext> contexts = new ThreadLocal<CodecContext>() {
+		@Override
+		protected CodecContext initialValue() {
+			return new CodecContext();
+		}
+	};
+
+	/**
+	 * <p>Title: CodecContext</p>
+	 * <p>Description: Per-thread reusable input and output scratch space</p>
+	 * <p><code>com.heliosapm.benchmarks.json.PersonCodec.CodecContext</code></p>
+	 */
+	static class CodecContext {
+		/** Scratch array direct buffer content is copied into so the byte parser can run over an array */
+		byte[] input = new byte[INITIAL_SCRATCH_SIZE];
+		/** Scratch buffer the generators write into */
+		final ChannelBuffer output = ChannelBuffers.dynamicBuffer(INITIAL_SCRATCH_SIZE);
+		/** The stream over the scratch output buffer */
+		final ChannelBufferOutputStream os = new ChannelBufferOutputStream(output);
+
+		/**
+		 * Returns the input scratch array, growing it if it is smaller than the passed size
+		 * @param size The required size
+		 * @return the input scratch array
+		 */
+		byte[] input(final int size) {
+			if(input.length < size) {
+				input = new byte[Math.max(size, input.length * 2)];
+			}
+			return input;
+		}
+
+		/**
+		 * Clears and returns the output scratch stream
+		 * @return the output scratch stream
+		 */
+		ChannelBufferOutputStream output() {
+			output.clear();
+			return os;
+		}
+	}
+
+	/**
+	 * Creates a new PersonCodec
+	 * @param mapper The mapper to resolve the readers and writers from
+	 */
+	public PersonCodec(final ObjectMapper mapper) {
+		if(mapper==null) throw new IllegalArgumentException("The passed mapper was null");
+		jsonFactory = mapper.getFactory();
+		rangeReads = !(jsonFactory instanceof XmlFactory);
+		personsReader = mapper.reader(Person[].class);
+		personReader = mapper.reader(Person.class);
+		friendReader = mapper.reader(Friend.class);
+		personsWriter = mapper.writerWithType(Person[].class);
+		personWriter = mapper.writerWithType(Person.class);
+		friendWriter = mapper.writerWithType(Friend.class);
+	}
+
+	/**
+	 * Reads an array of persons from the passed buffer. A {@link CompositeChannelBuffer}, such as the fragments
+	 * of a socket read, or a slice or duplicate of one, is streamed to the parser a component at a time rather
+	 * than consolidated first.
+	 * @param json The buffer containing a JSON array of persons
+	 * @return the persons
+	 */
+	public Person[] readPersons(final ChannelBuffer json) {
+		return read(personsReader, json);
+	}
+
+	/**
+	 * Reads a single person from the passed buffer
+	 * @param json The buffer containing a JSON person object
+	 * @return the person
+	 */
+	public Person readPerson(final ChannelBuffer json) {
+		return read(personReader, json);
+	}
+
+	/**
+	 * Reads a single friend from the passed buffer
+	 * @param json The buffer containing a JSON friend object
+	 * @return the friend
+	 */
+	public Friend readFriend(final ChannelBuffer json) {
+		return read(friendReader, json);
+	}
+
+	/**
+	 * Writes an array of persons to a string
+	 * @param persons The persons to write
+	 * @return the JSON string
+	 */
+	public String writeString(final Person...persons) {
+		return writeString(personsWriter, persons);
+	}
+
+	/**
+	 * Writes a single person to a string
+	 * @param person The person to write
+	 * @return the JSON string
+	 */
+	public String writeString(final Person person) {
+		return writeString(personWriter, person);
+	}
+
+	/**
+	 * Writes a single friend to a string
+	 * @param friend The friend to write
+	 * @return the JSON string
+	 */
+	public String writeString(final Friend friend) {
+		return writeString(friendWriter, friend);
+	}
+
+	/**
+	 * Writes an array of persons to an exactly sized buffer created by the passed factory
+	 * @param factory The factory to create the output buffer with
+	 * @param persons The persons to write
+	 * @return the buffer containing the JSON
+	 */
+	public ChannelBuffer write(final ChannelBufferFactory factory, final Person...persons) {
+		return write(personsWriter, factory, persons);
+	}
+
+	/**
+	 * Writes the passed persons as newline delimited JSON (one person object per line)
+	 * to an exactly sized buffer created by the passed factory
+	 * @param factory The factory to create the output buffer with
+	 * @param persons The persons to write
+	 * @return the buffer containing the JSON lines
+	 */
+	public ChannelBuffer writeLines(final ChannelBufferFactory factory, final Person...persons) {
+		if (persons == null)
+			throw new IllegalArgumentException("Persons were null");
+		final CodecContext ctx = contexts.get();
+		JsonGenerator gen = null;
+		try {
+			gen = jsonFactory.createGenerator((OutputStream)ctx.output(), JsonEncoding.UTF8);
+			gen.setRootValueSeparator(null);
+			for(Person person: persons) {
+				personWriter.writeValue(gen, person);
+				gen.writeRaw('\n');
+			}
+			gen.flush();
+			final ChannelBuffer b = factory.getBuffer(ctx.output.readableBytes());
+			b.writeBytes(ctx.output);
+			return b;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		} finally {
+			if(gen!=null) try { gen.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	/**
+	 * Writes a single person to an exactly sized buffer created by the passed factory
+	 * @param factory The factory to create the output buffer with
+	 * @param person The person to write
+	 * @return the buffer containing the JSON
+	 */
+	public ChannelBuffer write(final ChannelBufferFactory factory, final Person person) {
+		return write(personWriter, factory, person);
+	}
+
+	/**
+	 * Writes a single person as a frame: the 4 byte length of the JSON followed by the JSON,
+	 * to an exactly sized buffer created by the passed factory
+	 * @param factory The factory to create the output buffer with
+	 * @param person The person to write
+	 * @return the buffer containing the frame
+	 */
+	public ChannelBuffer writeFrame(final ChannelBufferFactory factory, final Person person) {
+		if (person == null)
+			throw new IllegalArgumentException("Person was null");
+		final CodecContext ctx = contexts.get();
+		try {
+			personWriter.writeValue(ctx.output(), person);
+			final int len = ctx.output.readableBytes();
+			final ChannelBuffer b = factory.getBuffer(4 + len);
+			b.writeInt(len);
+			b.writeBytes(ctx.output);
+			return b;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Writes a single friend to an exactly sized buffer created by the passed factory
+	 * @param factory The factory to create the output buffer with
+	 * @param friend The friend to write
+	 * @return the buffer containing the JSON
+	 */
+	public ChannelBuffer write(final ChannelBufferFactory factory, final Friend friend) {
+		return write(friendWriter, factory, friend);
+	}
+
+	private <T> T read(final ObjectReader reader, final ChannelBuffer json) {
+		if (json == null || json.readableBytes()<2)
+			throw new IllegalArgumentException("Incoming data was null or empty");
+		final int len = json.readableBytes();
+		if(isComposite(json)) return readComposite(reader, json, len);
+		try {
+			final T t;
+			final byte[] bytes;
+			final int offset;
+			if(json.hasArray()) {
+				bytes = json.array();
+				offset = json.arrayOffset() + json.readerIndex();
+			} else {
+				bytes = contexts.get().input(len);
+				offset = 0;
+				json.getBytes(json.readerIndex(), bytes, 0, len);
+			}
+			t = rangeReads ? reader.<T>readValue(bytes, offset, len) : reader.<T>readValue(new ByteArrayInputStream(bytes, offset, len));
+			json.skipBytes(len);
+			return t;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Determines if the passed buffer is a composite, or a slice or duplicate of one, whose components
+	 * would have to be copied together to be parsed as one array
+	 * @param json The buffer to test
+	 * @return true if the buffer is backed by a composite, false otherwise
+	 */
+	static boolean isComposite(final ChannelBuffer json) {
+		ChannelBuffer b = json;
+		while(b instanceof WrappedChannelBuffer) {
+			b = ((WrappedChannelBuffer)b).unwrap();
+		}
+		return b instanceof CompositeChannelBuffer;
+	}
+
+	/**
+	 * Reads from the components of a composite buffer in place. The parser pulls them through its own recycled
+	 * input buffer and carries any token or multi-byte UTF-8 sequence split across components over to its next read,
+	 * so the fragments are never copied into one contiguous array first.
+	 */
+	private static <T> T readComposite(final ObjectReader reader, final ChannelBuffer json, final int len) {
+		final int end = json.readerIndex() + len;
+		InputStream is = null;
+		try {
+			is = new ChannelBufferInputStream(json, len);
+			final T t = reader.<T>readValue(is);
+			json.readerIndex(end);
+			return t;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		} finally {
+			if(is!=null) try { is.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	private static String writeString(final ObjectWriter writer, final Object object) {
+		if (object == null)
+			throw new IllegalArgumentException("Object was null");
+		try {
+			return writer.writeValueAsString(object);
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private ChannelBuffer write(final ObjectWriter writer, final ChannelBufferFactory factory, final Object object) {
+		if (object == null)
+			throw new IllegalArgumentException("Object was null");
+		final CodecContext ctx = contexts.get();
+		try {
+			writer.writeValue(ctx.output(), object);
+			final ChannelBuffer b = factory.getBuffer(ctx.output.readableBytes());
+			b.writeBytes(ctx.output);
+			return b;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * <p>Title: PersonDates</p>
+ * <p>Description: Parses and formats the <b><code>registered</code></b> field of a {@link Person} outside of
+ * databind, matching the <code>@JsonFormat</code> pattern and the GMT default time zone the mapper applies.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonDates</code></p>
+ */
+
+public class PersonDates {
+	/** The format of the <b><code>registered</code></b> field, matching the pattern on {@link Person} */
+	public static final String DATE_FORMAT = "yyyy-MM-dd'T'HH:mm:ss";
+
+	/** Per-thread date formats */
+	private static final ThreadLocal<SimpleDateFormat> dateFormats = new ThreadLocal<SimpleDateFormat>() {
+		@Override
+		protected SimpleDateFormat initialValue() {
+			final SimpleDateFormat sdf = new SimpleDateFormat(DATE_FORMAT);
+			sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return sdf;
+		}
+	};
+
+	private PersonDates() {}
+
+	/**
+	 * Parses a <b><code>registered</code></b> value, ignoring the trailing zone offset the same way the bound {@link Person} does
+	 * @param s The value to parse
+	 * @return the date or null if the value was null
+	 */
+	public static Date parse(final String s) {
+		if(s==null) return null;
+		try {
+			return dateFormats.get().parse(s);
+		} catch (Exception ex) {
+			throw new RuntimeException("Failed to decode date [" + s + "]", ex);
+		}
+	}
+
+	/**
+	 * Formats a <b><code>registered</code></b> value
+	 * @param date The date to format
+	 * @return the formatted date or null if the date was null
+	 */
+	public static String format(final Date date) {
+		if(date==null) return null;
+		return dateFormats.get().format(date);
+	}
+
+}
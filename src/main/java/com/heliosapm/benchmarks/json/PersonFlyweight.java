@@ -0,0 +1,370 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.nio.charset.Charset;
+import java.util.Date;
+import java.util.HashSet;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * <p>Title: PersonFlyweight</p>
+ * <p>Description: Reusable accessor which reads the fields of a binary person record in place from a {@link ChannelBuffer}.
+ * One instance is {@link #wrap(ChannelBuffer, int) wrapped} around each record in turn, so scanning a buffer of records
+ * creates no per-record objects unless a string getter is called.</p>
+ * <p>Records are written by {@link PersonRecordWriter} with a fixed {@link #HEADER_SIZE} byte header followed by a variable region:</p>
+ * <pre>
+ *  offset  size  field
+ *  0       4     record length in bytes, including the header
+ *  4       8     index
+ *  12      4     age
+ *  16      4     latitude
+ *  20      4     longitude
+ *  24      8     registered, epoch millis, or Long.MIN_VALUE if null
+ *  32      1     isActive
+ *  33      1     tag count
+ *  34      1     friend count
+ *  35      1     (unused)
+ *  36      24    one unsigned short record offset per string field, 0 if null
+ *  60      2     record offset of the first tag, 0 if the tags are null
+ *  62      2     record offset of the friends table, 0 if the friends are null
+ *  64      ...   strings and tags as [unsigned short length][UTF-8 bytes],
+ *                and the friends table of [int id][unsigned short name offset] entries
+ * </pre>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonFlyweight</code></p>
+ */
+
+public class PersonFlyweight {
+	/** The size of the fixed record header */
+	public static final int HEADER_SIZE = 64;
+	/** The maximum size of a record, bounded by the unsigned short offsets */
+	public static final int MAX_RECORD_SIZE = 0xFFFF;
+	/** The size of a friends table entry */
+	public static final int FRIEND_ENTRY_SIZE = 6;
+	/** The value stored for a null registered date */
+	public static final long NULL_DATE = Long.MIN_VALUE;
+
+	static final int LENGTH = 0, INDEX = 4, AGE = 12, LATITUDE = 16, LONGITUDE = 20, REGISTERED = 24,
+		ACTIVE = 32, TAG_COUNT = 33, FRIEND_COUNT = 34, STRINGS = 36, TAGS = 60, FRIENDS = 62;
+
+	/** String field ordinal */
+	public static final int ID = 0, GUID = 1, PICTURE = 2, EYE_COLOR = 3, NAME = 4, GENDER = 5, COMPANY = 6,
+		EMAIL = 7, PHONE = 8, ADDRESS = 9, GREETING = 10, FAVORITE_FRUIT = 11;
+	/** The number of string fields */
+	public static final int STRING_COUNT = 12;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The buffer the current record is in */
+	private ChannelBuffer buffer = null;
+	/** The index of the current record in the buffer */
+	private int offset = -1;
+
+	/**
+	 * Points this flyweight at the record starting at the passed buffer index
+	 * @param buffer The buffer containing the record
+	 * @param offset The index of the record in the buffer
+	 * @return this flyweight
+	 */
+	public PersonFlyweight wrap(final ChannelBuffer buffer, final int offset) {
+		this.buffer = buffer;
+		this.offset = offset;
+		return this;
+	}
+
+	/**
+	 * Returns the buffer index of the record following this one
+	 * @return the index of the next record
+	 */
+	public int next() {
+		return offset + length();
+	}
+
+	/**
+	 * Returns the buffer index of this record
+	 * @return the index of this record
+	 */
+	public int offset() {
+		return offset;
+	}
+
+	/**
+	 * Returns the size of this record in bytes
+	 * @return the size of this record
+	 */
+	public int length() {
+		return buffer.getInt(offset + LENGTH);
+	}
+
+	/**
+	 * Returns the index
+	 * @return the index
+	 */
+	public long getIndex() {
+		return buffer.getLong(offset + INDEX);
+	}
+
+	/**
+	 * Returns the age
+	 * @return the age
+	 */
+	public int getAge() {
+		return buffer.getInt(offset + AGE);
+	}
+
+	/**
+	 * Returns the latitude
+	 * @return the latitude
+	 */
+	public float getLatitude() {
+		return buffer.getFloat(offset + LATITUDE);
+	}
+
+	/**
+	 * Returns the longitude
+	 * @return the longitude
+	 */
+	public float getLongitude() {
+		return buffer.getFloat(offset + LONGITUDE);
+	}
+
+	/**
+	 * Returns the registration date in epoch millis
+	 * @return the registration date or {@link #NULL_DATE} if not set
+	 */
+	public long getRegisteredMillis() {
+		return buffer.getLong(offset + REGISTERED);
+	}
+
+	/**
+	 * Returns the registration date
+	 * @return the registration date or null if not set
+	 */
+	public Date getRegistered() {
+		final long millis = getRegisteredMillis();
+		return millis==NULL_DATE ? null : new Date(millis);
+	}
+
+	/**
+	 * Returns the <b><code>isActive</code></b> field
+	 * @return true if active
+	 */
+	public boolean isActive() {
+		return buffer.getByte(offset + ACTIVE)!=0;
+	}
+
+	/**
+	 * Returns the number of tags
+	 * @return the number of tags
+	 */
+	public int getTagCount() {
+		return buffer.getUnsignedByte(offset + TAG_COUNT);
+	}
+
+	/**
+	 * Returns the number of friends
+	 * @return the number of friends
+	 */
+	public int getFriendCount() {
+		return buffer.getUnsignedByte(offset + FRIEND_COUNT);
+	}
+
+	// ==========================================================================================
+	//   Strings
+	// ==========================================================================================
+
+	/**
+	 * Returns the record offset of the passed string field
+	 * @param field The string field ordinal
+	 * @return the record offset or 0 if the field is null
+	 */
+	private int stringOffset(final int field) {
+		return buffer.getUnsignedShort(offset + STRINGS + field*2);
+	}
+
+	/**
+	 * Returns the UTF-8 length of the passed string field
+	 * @param field The string field ordinal, e.g. {@link #NAME}
+	 * @return the length in bytes or -1 if the field is null
+	 */
+	public int getStringLength(final int field) {
+		final int o = stringOffset(field);
+		return o==0 ? -1 : buffer.getUnsignedShort(offset + o);
+	}
+
+	/**
+	 * Compares the passed string field with the passed UTF-8 bytes without decoding the field
+	 * @param field The string field ordinal, e.g. {@link #GUID}
+	 * @param utf8 The bytes to compare with
+	 * @return true if equal
+	 */
+	public boolean stringEquals(final int field, final byte[] utf8) {
+		final int o = stringOffset(field);
+		if(o==0) return utf8==null;
+		return regionEquals(offset + o, utf8);
+	}
+
+	/**
+	 * Decodes the passed string field
+	 * @param field The string field ordinal, e.g. {@link #NAME}
+	 * @return the string or null if the field is null
+	 */
+	public String getString(final int field) {
+		final int o = stringOffset(field);
+		return o==0 ? null : region(offset + o);
+	}
+
+	/**
+	 * Returns the <b><code>_id</code></b> field
+	 * @return the id
+	 */
+	public String getId() {
+		return getString(ID);
+	}
+
+	/**
+	 * Returns the guid
+	 * @return the guid
+	 */
+	public String getGuid() {
+		return getString(GUID);
+	}
+
+	/**
+	 * Returns the name
+	 * @return the name
+	 */
+	public String getName() {
+		return getString(NAME);
+	}
+
+	/**
+	 * Returns the email
+	 * @return the email
+	 */
+	public String getEmail() {
+		return getString(EMAIL);
+	}
+
+	/**
+	 * Returns the tag at the passed index
+	 * @param index The tag index
+	 * @return the tag
+	 */
+	public String getTag(final int index) {
+		if(index < 0 || index >= getTagCount()) throw new IndexOutOfBoundsException("Invalid tag index: " + index);
+		int at = offset + buffer.getUnsignedShort(offset + TAGS);
+		for(int i = 0; i < index; i++) {
+			at += 2 + buffer.getUnsignedShort(at);
+		}
+		return region(at);
+	}
+
+	/**
+	 * Returns the id of the friend at the passed index
+	 * @param index The friend index
+	 * @return the friend id
+	 */
+	public int getFriendId(final int index) {
+		return buffer.getInt(friendEntry(index));
+	}
+
+	/**
+	 * Returns the name of the friend at the passed index
+	 * @param index The friend index
+	 * @return the friend name
+	 */
+	public String getFriendName(final int index) {
+		final int o = buffer.getUnsignedShort(friendEntry(index) + 4);
+		return o==0 ? null : region(offset + o);
+	}
+
+	private int friendEntry(final int index) {
+		if(index < 0 || index >= getFriendCount()) throw new IndexOutOfBoundsException("Invalid friend index: " + index);
+		return offset + buffer.getUnsignedShort(offset + FRIENDS) + index * FRIEND_ENTRY_SIZE;
+	}
+
+	private String region(final int at) {
+		return buffer.toString(at + 2, buffer.getUnsignedShort(at), UTF8);
+	}
+
+	private boolean regionEquals(final int at, final byte[] utf8) {
+		if(utf8==null) return false;
+		final int len = buffer.getUnsignedShort(at);
+		if(len!=utf8.length) return false;
+		for(int i = 0; i < len; i++) {
+			if(buffer.getByte(at + 2 + i)!=utf8[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Decodes every field of the current record into a new {@link Person}
+	 * @return the materialized person
+	 */
+	public Person toPerson() {
+		final Person p = new Person();
+		p.id = getId();
+		p.index = getIndex();
+		p.guid = getGuid();
+		p.active = isActive();
+		p.picture = getString(PICTURE);
+		p.age = getAge();
+		p.eyeColor = getString(EYE_COLOR);
+		p.name = getName();
+		p.gender = getString(GENDER);
+		p.company = getString(COMPANY);
+		p.email = getEmail();
+		p.phone = getString(PHONE);
+		p.address = getString(ADDRESS);
+		p.registered = getRegistered();
+		p.latitude = getLatitude();
+		p.longitude = getLongitude();
+		if(buffer.getUnsignedShort(offset + TAGS)!=0) {
+			final int tagCount = getTagCount();
+			p.tags = new HashSet<String>(tagCount * 2);
+			for(int i = 0; i < tagCount; i++) {
+				p.tags.add(getTag(i));
+			}
+		}
+		if(buffer.getUnsignedShort(offset + FRIENDS)!=0) {
+			final int friendCount = getFriendCount();
+			p.friends = new Friend[friendCount];
+			for(int i = 0; i < friendCount; i++) {
+				final Friend f = new Friend();
+				f.id = getFriendId(i);
+				f.name = getFriendName(i);
+				p.friends[i] = f;
+			}
+		}
+		p.greeting = getString(GREETING);
+		p.favoriteFruit = getString(FAVORITE_FRUIT);
+		return p;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return buffer==null ? "PersonFlyweight [unwrapped]" : "PersonFlyweight [" + offset + ":" + getName() + "]";
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.frame.CorruptedFrameException;
+import org.jboss.netty.handler.codec.frame.FrameDecoder;
+import org.jboss.netty.handler.codec.frame.TooLongFrameException;
+
+/**
+ * <p>Title: PersonFrameDecoder</p>
+ * <p>Description: Decodes frames written by {@link PersonFrameEncoder}, a 4 byte length followed by a JSON person,
+ * into {@link Person}s. The JSON is bound straight from the cumulation buffer, so a complete frame is never
+ * copied into a frame buffer of its own.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonFrameDecoder</code></p>
+ */
+
+public class PersonFrameDecoder extends FrameDecoder {
+	/** The default maximum frame length */
+	public static final int DEFAULT_MAX_FRAME_LENGTH = 1024 * 1024;
+
+	/** The codec frames are bound with */
+	private final PersonCodec codec;
+	/** The maximum JSON length of a frame */
+	private final int maxFrameLength;
+
+	/**
+	 * Creates a new PersonFrameDecoder with the default maximum frame length
+	 * @param codec The codec frames are bound with
+	 */
+	public PersonFrameDecoder(final PersonCodec codec) {
+		this(codec, DEFAULT_MAX_FRAME_LENGTH);
+	}
+
+	/**
+	 * Creates a new PersonFrameDecoder
+	 * @param codec The codec frames are bound with
+	 * @param maxFrameLength The maximum JSON length of a frame
+	 */
+	public PersonFrameDecoder(final PersonCodec codec, final int maxFrameLength) {
+		if(codec==null) throw new IllegalArgumentException("The passed codec was null");
+		if(maxFrameLength < 2) throw new IllegalArgumentException("Invalid max frame length: " + maxFrameLength);
+		this.codec = codec;
+		this.maxFrameLength = maxFrameLength;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.codec.frame.FrameDecoder#decode(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, org.jboss.netty.buffer.ChannelBuffer)
+	 */
+	@Override
+	protected Object decode(final ChannelHandlerContext ctx, final Channel channel, final ChannelBuffer buffer) throws Exception {
+		if(buffer.readableBytes() < 4) return null;
+		final int start = buffer.readerIndex();
+		final int len = buffer.getInt(start);
+		if(len < 2) {
+			buffer.skipBytes(buffer.readableBytes());
+			throw new CorruptedFrameException("Invalid frame length: " + len);
+		}
+		if(len > maxFrameLength) {
+			buffer.skipBytes(buffer.readableBytes());
+			throw new TooLongFrameException("Frame length " + len + " exceeds " + maxFrameLength);
+		}
+		if(buffer.readableBytes() < 4 + len) return null;
+		// the frame is skipped before binding so a malformed body is dropped rather than failing every later decode.
+		// The slice is read before the decoder returns, so it can share the cumulation buffer.
+		final ChannelBuffer frame = buffer.slice(start + 4, len);
+		buffer.skipBytes(4 + len);
+		return codec.readPerson(frame);
+	}
+
+}
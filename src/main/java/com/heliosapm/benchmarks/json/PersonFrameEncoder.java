@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.handler.codec.oneone.OneToOneEncoder;
+
+/**
+ * <p>Title: PersonFrameEncoder</p>
+ * <p>Description: Encodes {@link Person}s as frames of a 4 byte length followed by the JSON, in a buffer from the
+ * channel's buffer factory. Other messages are passed through. Decoded by {@link PersonFrameDecoder}.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonFrameEncoder</code></p>
+ */
+
+public class PersonFrameEncoder extends OneToOneEncoder {
+	/** The codec persons are written with */
+	private final PersonCodec codec;
+
+	/**
+	 * Creates a new PersonFrameEncoder
+	 * @param codec The codec persons are written with
+	 */
+	public PersonFrameEncoder(final PersonCodec codec) {
+		if(codec==null) throw new IllegalArgumentException("The passed codec was null");
+		this.codec = codec;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see org.jboss.netty.handler.codec.oneone.OneToOneEncoder#encode(org.jboss.netty.channel.ChannelHandlerContext, org.jboss.netty.channel.Channel, java.lang.Object)
+	 */
+	@Override
+	protected Object encode(final ChannelHandlerContext ctx, final Channel channel, final Object msg) throws Exception {
+		if(!(msg instanceof Person)) return msg;
+		return codec.writeFrame(channel.getConfig().getBufferFactory(), (Person)msg);
+	}
+
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.Random;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBufferOutputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * <p>Title: PersonGenerator</p>
+ * <p>Description: Deterministic generator of {@link Person} / {@link Friend} shaped JSON arrays of any target size.
+ * The JSON is written token by token straight to the output, so no object graph is built in memory.
+ * The same seed and settings always produce the same bytes.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonGenerator</code></p>
+ * <p>Usage: <b><code>PersonGenerator &lt;file&gt; &lt;size, e.g. 256mb&gt; [seed]</code></b></p>
+ */
+
+public class PersonGenerator {
+	/** The default seed */
+	public static final long DEFAULT_SEED = 42L;
+	/** The default number of friends per person */
+	public static final int DEFAULT_FRIENDS = 3;
+	/** The default number of tags per person */
+	public static final int DEFAULT_TAGS = 7;
+	/** The default approximate length of the about text, when {@link #extended(boolean)} is enabled */
+	public static final int DEFAULT_ABOUT_LENGTH = 380;
+	/** The default maximum length of generated company names */
+	public static final int DEFAULT_WORD_LENGTH = 10;
+	/** The number of persons written between flushes to check the size written so far */
+	public static final int SIZE_CHECK_INTERVAL = 16;
+
+	private static final JsonFactory factory = new JsonFactory();
+
+	private static final String[] FIRST_NAMES = {"Noemi", "Miller", "Lydia", "Courtney", "Hays", "Wilma", "Bernice", "Tate", "Rosales", "Ayala", "Kathy", "Vinson", "Gay", "Lorene", "Dixon", "Beulah"};
+	private static final String[] LAST_NAMES = {"Richards", "Arnold", "Owen", "Sawyer", "Mccall", "Pruitt", "Holden", "Conner", "Wilkins", "Hurst", "Barr", "Guerra", "Mathis", "Ortega", "Patton", "Snider"};
+	private static final String[] EYE_COLORS = {"brown", "blue", "green"};
+	private static final String[] GENDERS = {"female", "male"};
+	private static final String[] FRUITS = {"banana", "apple", "strawberry"};
+	private static final String[] STREETS = {"Amity Street", "Gunther Place", "Lake Avenue", "Gerritsen Avenue", "Kent Street", "Lenox Road"};
+	private static final String[] CITIES = {"Chautauqua", "Rockhill", "Fostoria", "Sattley", "Kenvil", "Hiwasse"};
+	private static final String[] STATES = {"Guam", "Ohio", "Nevada", "Vermont", "Idaho", "Palau"};
+	private static final String[] WORDS = {"occaecat", "cillum", "adipisicing", "aliquip", "dolor", "eu", "sint", "cupidatat", "qui", "mollit",
+		"consectetur", "culpa", "deserunt", "quis", "nulla", "aute", "labore", "commodo", "est", "voluptate", "exercitation", "nisi",
+		"sit", "aliqua", "do", "consequat", "sunt", "veniam", "ut", "id", "excepteur", "pariatur", "esse", "incididunt", "non", "et",
+		"officia", "nostrud", "ea", "laborum", "ad", "tempor", "duis"};
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	private static final char[] UPPER = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+
+	/** The seed */
+	private final long seed;
+	/** The number of friends per person */
+	private int friends = DEFAULT_FRIENDS;
+	/** The number of tags per person */
+	private int tags = DEFAULT_TAGS;
+	/** The approximate length of the about text */
+	private int aboutLength = DEFAULT_ABOUT_LENGTH;
+	/** The maximum length of generated company names */
+	private int wordLength = DEFAULT_WORD_LENGTH;
+	/** Indicates if the balance and about fields should be written */
+	private boolean extended = false;
+
+	/**
+	 * Creates a new PersonGenerator
+	 * @param seed The random seed
+	 */
+	public PersonGenerator(final long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Sets the number of friends per person
+	 * @param friends the number of friends per person
+	 * @return this generator
+	 */
+	public PersonGenerator friends(final int friends) {
+		if(friends < 0) throw new IllegalArgumentException("Invalid friends count: " + friends);
+		this.friends = friends;
+		return this;
+	}
+
+	/**
+	 * Sets the number of tags per person
+	 * @param tags the number of tags per person
+	 * @return this generator
+	 */
+	public PersonGenerator tags(final int tags) {
+		if(tags < 0) throw new IllegalArgumentException("Invalid tags count: " + tags);
+		this.tags = tags;
+		return this;
+	}
+
+	/**
+	 * Sets the approximate length of the about text
+	 * @param aboutLength the approximate length of the about text
+	 * @return this generator
+	 */
+	public PersonGenerator aboutLength(final int aboutLength) {
+		if(aboutLength < 0) throw new IllegalArgumentException("Invalid about length: " + aboutLength);
+		this.aboutLength = aboutLength;
+		return this;
+	}
+
+	/**
+	 * Sets the maximum length of generated company names
+	 * @param wordLength the maximum length of generated company names
+	 * @return this generator
+	 */
+	public PersonGenerator wordLength(final int wordLength) {
+		if(wordLength < 1) throw new IllegalArgumentException("Invalid word length: " + wordLength);
+		this.wordLength = wordLength;
+		return this;
+	}
+
+	/**
+	 * Sets whether the <code>balance</code> and <code>about</code> fields of the original generator template are written.
+	 * The samples omit them and {@link Person} does not map them, so they are off by default.
+	 * @param extended true to write the balance and about fields
+	 * @return this generator
+	 */
+	public PersonGenerator extended(final boolean extended) {
+		this.extended = extended;
+		return this;
+	}
+
+	/**
+	 * Writes a JSON array of persons of at least the target size to the passed stream.
+	 * The stream is not closed.
+	 * @param os The stream to write to
+	 * @param targetBytes The target size in bytes. The output stops at the first person boundary past the target.
+	 * @return the number of persons written
+	 * @throws IOException thrown on any IO error
+	 */
+	public int generate(final OutputStream os, final long targetBytes) throws IOException {
+		final CountingOutputStream cos = new CountingOutputStream(os);
+		final JsonGenerator gen = factory.createGenerator(cos, JsonEncoding.UTF8);
+		// flushes only push the generator's buffer into the counter, not through to the sink
+		gen.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+		gen.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		final Random r = new Random(seed);
+		int index = 0;
+		gen.writeStartArray();
+		while(true) {
+			writePerson(gen, r, index++);
+			if(index % SIZE_CHECK_INTERVAL == 0 || targetBytes < 4096) {
+				gen.flush();
+				if(cos.count >= targetBytes) break;
+			}
+		}
+		gen.writeEndArray();
+		gen.close();
+		return index;
+	}
+
+	/**
+	 * Writes a JSON array of persons of at least the target size to the passed file
+	 * @param file The file to write to
+	 * @param targetBytes The target size in bytes
+	 * @return the number of persons written
+	 * @throws IOException thrown on any IO error
+	 */
+	public int generate(final File file, final long targetBytes) throws IOException {
+		OutputStream os = null;
+		try {
+			os = new BufferedOutputStream(new FileOutputStream(file), 1024 * 1024);
+			return generate(os, targetBytes);
+		} finally {
+			if(os!=null) try { os.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	/**
+	 * Writes a JSON array of persons of at least the target size to a new buffer created by the passed factory
+	 * @param bfactory The factory to create the buffer with
+	 * @param targetBytes The target size in bytes
+	 * @return the buffer
+	 */
+	public ChannelBuffer generate(final ChannelBufferFactory bfactory, final int targetBytes) {
+		// allow for the overshoot past the target
+		final ChannelBuffer b = ChannelBuffers.dynamicBuffer(targetBytes + (targetBytes >> 4) + 8192, bfactory);
+		try {
+			generate(new ChannelBufferOutputStream(b), targetBytes);
+			return b;
+		} catch (IOException iex) {
+			throw new RuntimeException(iex);
+		}
+	}
+
+	private void writePerson(final JsonGenerator gen, final Random r, final int index) throws IOException {
+		final String first = pick(r, FIRST_NAMES);
+		final String last = pick(r, LAST_NAMES);
+		final String company = word(r);
+		gen.writeStartObject();
+		gen.writeStringField("_id", hex(r, 24));
+		gen.writeNumberField("index", index);
+		gen.writeStringField("guid", guid(r));
+		gen.writeBooleanField("isActive", r.nextBoolean());
+		final String balance = String.format(Locale.US, "$%,.2f", r.nextInt(400000) / 100D);
+		if(extended) gen.writeStringField("balance", balance);
+		gen.writeStringField("picture", "http://placehold.it/32x32");
+		gen.writeNumberField("age", 20 + r.nextInt(21));
+		gen.writeStringField("eyeColor", pick(r, EYE_COLORS));
+		gen.writeStringField("name", first + " " + last);
+		gen.writeStringField("gender", pick(r, GENDERS));
+		gen.writeStringField("company", company);
+		gen.writeStringField("email", (first + last + "@" + company + ".com").toLowerCase(Locale.US));
+		gen.writeStringField("phone", String.format("+1 (%03d) %03d-%04d", 800 + r.nextInt(200), r.nextInt(1000), r.nextInt(10000)));
+		gen.writeStringField("address", String.format("%d %s, %s, %s, %d", 100 + r.nextInt(900), pick(r, STREETS), pick(r, CITIES), pick(r, STATES), 1000 + r.nextInt(9000)));
+		final String about = sentence(r, aboutLength);
+		if(extended) gen.writeStringField("about", about);
+		gen.writeStringField("registered", String.format("%d-%02d-%02dT%02d:%02d:%02d %s%02d:00", 2014 + r.nextInt(3), 1 + r.nextInt(12), 1 + r.nextInt(28),
+				r.nextInt(24), r.nextInt(60), r.nextInt(60), r.nextBoolean() ? "+" : "-", r.nextInt(12)));
+		gen.writeNumberField("latitude", (float)(r.nextDouble() * 180D - 90D));
+		gen.writeNumberField("longitude", (float)(r.nextDouble() * 360D - 180D));
+		gen.writeArrayFieldStart("tags");
+		for(int i = 0; i < tags; i++) {
+			gen.writeString(pick(r, WORDS));
+		}
+		gen.writeEndArray();
+		gen.writeArrayFieldStart("friends");
+		for(int i = 0; i < friends; i++) {
+			gen.writeStartObject();
+			gen.writeNumberField("id", i);
+			gen.writeStringField("name", pick(r, FIRST_NAMES) + " " + pick(r, LAST_NAMES));
+			gen.writeEndObject();
+		}
+		gen.writeEndArray();
+		gen.writeStringField("greeting", "Hello, " + first + " " + last + "! You have " + (1 + r.nextInt(10)) + " unread messages.");
+		gen.writeStringField("favoriteFruit", pick(r, FRUITS));
+		gen.writeEndObject();
+	}
+
+	private static String pick(final Random r, final String[] values) {
+		return values[r.nextInt(values.length)];
+	}
+
+	private static String hex(final Random r, final int length) {
+		final char[] c = new char[length];
+		for(int i = 0; i < length; i++) {
+			c[i] = HEX[r.nextInt(16)];
+		}
+		return new String(c);
+	}
+
+	private static String guid(final Random r) {
+		return new StringBuilder(36).append(hex(r, 8)).append('-').append(hex(r, 4)).append('-').append(hex(r, 4))
+			.append('-').append(hex(r, 4)).append('-').append(hex(r, 12)).toString();
+	}
+
+	private String word(final Random r) {
+		final int length = 3 + r.nextInt(Math.max(1, wordLength - 2));
+		final char[] c = new char[length];
+		for(int i = 0; i < length; i++) {
+			c[i] = UPPER[r.nextInt(UPPER.length)];
+		}
+		return new String(c);
+	}
+
+	private static String sentence(final Random r, final int length) {
+		final StringBuilder b = new StringBuilder(length + 16);
+		while(b.length() < length) {
+			if(b.length() > 0) b.append(' ');
+			b.append(pick(r, WORDS));
+		}
+		return b.append(".\r\n").toString();
+	}
+
+	/**
+	 * Parses a size such as <code>512kb</code>, <code>64mb</code> or <code>2gb</code> to a byte count.
+	 * A plain number is taken as bytes.
+	 * @param size The size to parse
+	 * @return the size in bytes
+	 */
+	public static long parseSize(final String size) {
+		if(size==null || size.trim().isEmpty()) throw new IllegalArgumentException("The passed size was null or empty");
+		final String s = size.trim().toLowerCase(Locale.US);
+		long multiplier = 1L;
+		String number = s;
+		if(s.endsWith("kb")) { multiplier = 1024L; number = s.substring(0, s.length()-2); }
+		else if(s.endsWith("mb")) { multiplier = 1024L * 1024L; number = s.substring(0, s.length()-2); }
+		else if(s.endsWith("gb")) { multiplier = 1024L * 1024L * 1024L; number = s.substring(0, s.length()-2); }
+		try {
+			return Long.parseLong(number.trim()) * multiplier;
+		} catch (NumberFormatException nex) {
+			throw new IllegalArgumentException("Invalid size [" + size + "]");
+		}
+	}
+
+	/**
+	 * Writes a generated dataset to a file
+	 * @param args The file name, the target size and an optional seed
+	 * @throws Exception thrown on any error
+	 */
+	public static void main(final String[] args) throws Exception {
+		if(args.length < 2) {
+			System.err.println("Usage: PersonGenerator <file> <size, e.g. 256mb> [seed]");
+			System.exit(1);
+		}
+		final File f = new File(args[0]);
+		final long target = parseSize(args[1]);
+		final long seed = args.length > 2 ? Long.parseLong(args[2]) : DEFAULT_SEED;
+		final long start = System.currentTimeMillis();
+		final int persons = new PersonGenerator(seed).generate(f, target);
+		System.out.println(String.format("Generated [%s]: persons: %s, bytes: %s, elapsed: %s ms", f, persons, f.length(), System.currentTimeMillis() - start));
+	}
+
+	/**
+	 * <p>Title: CountingOutputStream</p>
+	 * <p>Description: Pass through stream that counts the bytes written</p>
+	 * <p><code>com.heliosapm.benchmarks.json.PersonGenerator.CountingOutputStream</code></p>
+	 */
+	static class CountingOutputStream extends OutputStream {
+		/** The delegate stream */
+		private final OutputStream os;
+		/** The number of bytes written */
+		long count = 0L;
+
+		CountingOutputStream(final OutputStream os) {
+			this.os = os;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			os.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			os.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			os.flush();
+		}
+	}
+
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import static com.heliosapm.benchmarks.json.LazyPersonIndexer.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.heliosapm.benchmarks.json.PersonStreamReader.PersonHandler;
+
+/**
+ * <p>Title: PersonProjection</p>
+ * <p>Description: Reads a JSON array of persons binding only a declared subset of the properties.
+ * Every other value, including the <b><code>friends</code></b> and <b><code>tags</code></b> arrays and long strings,
+ * is skipped at token level with {@link JsonParser#skipChildren()} so it is never decoded or allocated.
+ * The returned {@link Person}s have the projected properties set and the rest left at their defaults.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonProjection</code></p>
+ */
+
+public class PersonProjection {
+	/** The ordinals of the property names, as declared in {@link LazyPersonIndexer#FIELDS} */
+	private static final Map<String, Integer> ORDINALS;
+
+	static {
+		final Map<String, Integer> tmp = new HashMap<String, Integer>(FIELD_COUNT * 2);
+		for(int i = 0; i < FIELD_COUNT; i++) {
+			tmp.put(FIELDS[i], i);
+		}
+		ORDINALS = tmp;
+	}
+
+	/** The mapper the parsers are created from */
+	private final ObjectMapper mapper;
+	/** The reader for the tags property */
+	private final ObjectReader tagsReader;
+	/** The reader for the friends property */
+	private final ObjectReader friendsReader;
+	/** The projected flag of each property, indexed by ordinal */
+	private final boolean[] projected = new boolean[FIELD_COUNT];
+	/** The projected property names */
+	private final String[] names;
+
+	/**
+	 * Creates a new PersonProjection
+	 * @param mapper The mapper the parsers are created from
+	 * @param properties The JSON names of the projected properties, e.g. <b><code>guid, age, isActive</code></b>
+	 */
+	public PersonProjection(final ObjectMapper mapper, final Collection<String> properties) {
+		if(mapper==null) throw new IllegalArgumentException("The passed mapper was null");
+		if(properties==null || properties.isEmpty()) throw new IllegalArgumentException("No properties were projected");
+		this.mapper = mapper;
+		tagsReader = mapper.reader(mapper.getTypeFactory().constructCollectionType(Set.class, String.class));
+		friendsReader = mapper.reader(Friend[].class);
+		final List<String> tmp = new ArrayList<String>(properties.size());
+		for(String p: properties) {
+			final Integer ordinal = ORDINALS.get(p.trim());
+			if(ordinal==null) throw new IllegalArgumentException("Unknown Person property [" + p + "]. Valid properties are " + Arrays.toString(FIELDS));
+			if(!projected[ordinal]) {
+				projected[ordinal] = true;
+				tmp.add(p.trim());
+			}
+		}
+		names = tmp.toArray(new String[tmp.size()]);
+	}
+
+	/**
+	 * Creates a new PersonProjection
+	 * @param mapper The mapper the parsers are created from
+	 * @param properties The JSON names of the projected properties, e.g. <b><code>guid, age, isActive</code></b>
+	 */
+	public PersonProjection(final ObjectMapper mapper, final String...properties) {
+		this(mapper, properties==null ? null : Arrays.asList(properties));
+	}
+
+	/**
+	 * Reads the projected persons from the passed buffer containing a JSON array of persons.
+	 * The buffer's indexes are not modified.
+	 * @param json The buffer to read from
+	 * @return the projected persons
+	 */
+	public Person[] read(final ChannelBuffer json) {
+		final List<Person> persons = new ArrayList<Person>();
+		read(json, new PersonHandler() {
+			@Override
+			public boolean onPerson(final int index, final Person person) {
+				persons.add(person);
+				return true;
+			}
+		});
+		return persons.toArray(new Person[persons.size()]);
+	}
+
+	/**
+	 * Reads the projected persons from the passed buffer containing a JSON array of persons,
+	 * passing each to the handler until the array ends or the handler returns false.
+	 * The buffer's indexes are not modified.
+	 * @param json The buffer to read from
+	 * @param handler The handler to pass each person to
+	 * @return the number of persons passed to the handler
+	 */
+	public int read(final ChannelBuffer json, final PersonHandler handler) {
+		if(json==null || json.readableBytes()<2) throw new IllegalArgumentException("Incoming data was null or empty");
+		if(handler==null) throw new IllegalArgumentException("The passed handler was null");
+		JsonParser parser = null;
+		int count = 0;
+		try {
+			parser = json.hasArray()
+				? mapper.getFactory().createParser(json.array(), json.arrayOffset() + json.readerIndex(), json.readableBytes())
+				: mapper.getFactory().createParser(new ChannelBufferInputStream(json.duplicate()));
+			if(parser.nextToken()!=JsonToken.START_ARRAY) throw new IllegalArgumentException("Expected a JSON array");
+			while(parser.nextToken()==JsonToken.START_OBJECT) {
+				final Person person = readPerson(parser);
+				count++;
+				if(!handler.onPerson(count-1, person)) break;
+			}
+			return count;
+		} catch (IllegalArgumentException iex) {
+			throw iex;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		} finally {
+			if(parser!=null) try { parser.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	/**
+	 * Reads the projected properties of the object the parser is positioned at
+	 * @param parser The parser, positioned at the start of the object
+	 * @return the projected person
+	 * @throws Exception thrown on any parsing error
+	 */
+	Person readPerson(final JsonParser parser) throws Exception {
+		final Person p = new Person();
+		while(parser.nextToken()==JsonToken.FIELD_NAME) {
+			// field names are canonicalized by the parser so this lookup does not allocate
+			final Integer ordinal = ORDINALS.get(parser.getCurrentName());
+			final JsonToken t = parser.nextToken();
+			if(ordinal==null || !projected[ordinal] || t==JsonToken.VALUE_NULL) {
+				parser.skipChildren();
+				continue;
+			}
+			switch(ordinal) {
+				case ID: p.id = parser.getText(); break;
+				case INDEX: p.index = parser.getLongValue(); break;
+				case GUID: p.guid = parser.getText(); break;
+				case ACTIVE: p.active = parser.getBooleanValue(); break;
+				case PICTURE: p.picture = parser.getText(); break;
+				case AGE: p.age = parser.getIntValue(); break;
+				case EYE_COLOR: p.eyeColor = parser.getText(); break;
+				case NAME: p.name = parser.getText(); break;
+				case GENDER: p.gender = parser.getText(); break;
+				case COMPANY: p.company = parser.getText(); break;
+				case EMAIL: p.email = parser.getText(); break;
+				case PHONE: p.phone = parser.getText(); break;
+				case ADDRESS: p.address = parser.getText(); break;
+				case REGISTERED: p.registered = PersonDates.parse(parser.getText()); break;
+				case LATITUDE: p.latitude = parser.getFloatValue(); break;
+				case LONGITUDE: p.longitude = parser.getFloatValue(); break;
+				case TAGS: p.tags = tagsReader.readValue(parser); break;
+				case FRIENDS: p.friends = friendsReader.readValue(parser); break;
+				case GREETING: p.greeting = parser.getText(); break;
+				case FAVORITE_FRUIT: p.favoriteFruit = parser.getText(); break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Returns the projected property names
+	 * @return the projected property names
+	 */
+	public String[] getProperties() {
+		return names.clone();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "PersonProjection " + Arrays.toString(names);
+	}
+
+}
@@ -0,0 +1,330 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import static com.heliosapm.benchmarks.json.PersonFlyweight.*;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * <p>Title: PersonRecordWriter</p>
+ * <p>Description: Writes binary person records in the {@link PersonFlyweight} layout, either from {@link Person}s
+ * or transcoded straight from the JSON tokens with no intermediate objects. String values are encoded to UTF-8
+ * from the parser's character buffer. Instances hold scratch state and are not thread safe.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonRecordWriter</code></p>
+ */
+
+public class PersonRecordWriter {
+	/** The maximum number of tags or friends in a record */
+	public static final int MAX_ELEMENTS = 0xFF;
+
+	/** The factory parsers are created from */
+	private final JsonFactory factory;
+	/** Scratch friend ids for the record being transcoded */
+	private final int[] friendIds = new int[MAX_ELEMENTS];
+	/** Scratch friend name offsets for the record being transcoded */
+	private final int[] friendNames = new int[MAX_ELEMENTS];
+	/** Scratch chars for strings written from a Person */
+	private char[] chars = new char[256];
+
+	/**
+	 * Creates a new PersonRecordWriter
+	 * @param factory The factory parsers are created from
+	 */
+	public PersonRecordWriter(final JsonFactory factory) {
+		if(factory==null) throw new IllegalArgumentException("The passed factory was null");
+		this.factory = factory;
+	}
+
+	/**
+	 * Transcodes the readable bytes of the passed buffer, containing a JSON array of persons,
+	 * appending one record per person to the output buffer. The input buffer's indexes are not modified.
+	 * @param json The buffer containing the JSON array
+	 * @param out The buffer to append the records to
+	 * @return the number of records written
+	 */
+	public int transcode(final ChannelBuffer json, final ChannelBuffer out) {
+		if(json==null || json.readableBytes()<2) throw new IllegalArgumentException("Incoming data was null or empty");
+		JsonParser parser = null;
+		try {
+			parser = parser(json);
+			if(parser.nextToken()!=JsonToken.START_ARRAY) throw new IllegalArgumentException("Expected a JSON array");
+			int count = 0;
+			while(parser.nextToken()==JsonToken.START_OBJECT) {
+				transcode(parser, out);
+				count++;
+			}
+			return count;
+		} catch (IllegalArgumentException iex) {
+			throw iex;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		} finally {
+			if(parser!=null) try { parser.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	/**
+	 * Transcodes the readable bytes of the passed buffer, containing a single JSON person object,
+	 * appending the record to the output buffer. The input buffer's indexes are not modified.
+	 * @param json The buffer containing the JSON object
+	 * @param out The buffer to append the record to
+	 */
+	public void transcodePerson(final ChannelBuffer json, final ChannelBuffer out) {
+		if(json==null || json.readableBytes()<2) throw new IllegalArgumentException("Incoming data was null or empty");
+		JsonParser parser = null;
+		try {
+			parser = parser(json);
+			if(parser.nextToken()!=JsonToken.START_OBJECT) throw new IllegalArgumentException("Expected a JSON object");
+			transcode(parser, out);
+		} catch (IllegalArgumentException iex) {
+			throw iex;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		} finally {
+			if(parser!=null) try { parser.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	private JsonParser parser(final ChannelBuffer json) throws Exception {
+		return json.hasArray()
+			? factory.createParser(json.array(), json.arrayOffset() + json.readerIndex(), json.readableBytes())
+			: factory.createParser(new ChannelBufferInputStream(json.duplicate()));
+	}
+
+	/**
+	 * Transcodes the person object the parser is positioned at into a record appended to the output buffer
+	 * @param parser The parser, positioned at the start of the object
+	 * @param out The buffer to append the record to
+	 * @throws Exception thrown on any parsing error
+	 */
+	public void transcode(final JsonParser parser, final ChannelBuffer out) throws Exception {
+		final int start = startRecord(out);
+		while(parser.nextToken()==JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			final JsonToken t = parser.nextToken();
+			if(t==JsonToken.VALUE_NULL) continue;
+			switch(field) {
+				case "_id": string(parser, out, start, ID); break;
+				case "index": out.setLong(start + INDEX, parser.getLongValue()); break;
+				case "guid": string(parser, out, start, GUID); break;
+				case "isActive": out.setByte(start + ACTIVE, parser.getBooleanValue() ? 1 : 0); break;
+				case "picture": string(parser, out, start, PICTURE); break;
+				case "age": out.setInt(start + AGE, parser.getIntValue()); break;
+				case "eyeColor": string(parser, out, start, EYE_COLOR); break;
+				case "name": string(parser, out, start, NAME); break;
+				case "gender": string(parser, out, start, GENDER); break;
+				case "company": string(parser, out, start, COMPANY); break;
+				case "email": string(parser, out, start, EMAIL); break;
+				case "phone": string(parser, out, start, PHONE); break;
+				case "address": string(parser, out, start, ADDRESS); break;
+				case "registered": out.setLong(start + REGISTERED, PersonDates.parse(parser.getText()).getTime()); break;
+				case "latitude": out.setFloat(start + LATITUDE, parser.getFloatValue()); break;
+				case "longitude": out.setFloat(start + LONGITUDE, parser.getFloatValue()); break;
+				case "tags": tags(parser, out, start); break;
+				case "friends": friends(parser, out, start); break;
+				case "greeting": string(parser, out, start, GREETING); break;
+				case "favoriteFruit": string(parser, out, start, FAVORITE_FRUIT); break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		endRecord(out, start);
+	}
+
+	/**
+	 * Writes the passed person as a record appended to the output buffer
+	 * @param p The person to write
+	 * @param out The buffer to append the record to
+	 */
+	public void write(final Person p, final ChannelBuffer out) {
+		final int start = startRecord(out);
+		out.setLong(start + INDEX, p.index);
+		out.setInt(start + AGE, p.age);
+		out.setFloat(start + LATITUDE, p.latitude);
+		out.setFloat(start + LONGITUDE, p.longitude);
+		out.setLong(start + REGISTERED, p.registered==null ? NULL_DATE : p.registered.getTime());
+		out.setByte(start + ACTIVE, p.active ? 1 : 0);
+		string(p.id, out, start, ID);
+		string(p.guid, out, start, GUID);
+		string(p.picture, out, start, PICTURE);
+		string(p.eyeColor, out, start, EYE_COLOR);
+		string(p.name, out, start, NAME);
+		string(p.gender, out, start, GENDER);
+		string(p.company, out, start, COMPANY);
+		string(p.email, out, start, EMAIL);
+		string(p.phone, out, start, PHONE);
+		string(p.address, out, start, ADDRESS);
+		string(p.greeting, out, start, GREETING);
+		string(p.favoriteFruit, out, start, FAVORITE_FRUIT);
+		if(p.tags!=null) {
+			if(p.tags.size() > MAX_ELEMENTS) throw new IllegalArgumentException("Too many tags: " + p.tags.size());
+			out.setShort(start + TAGS, recordOffset(out, start));
+			out.setByte(start + TAG_COUNT, p.tags.size());
+			for(String tag: p.tags) {
+				utf8(tag, out);
+			}
+		}
+		if(p.friends!=null) {
+			final int count = p.friends.length;
+			if(count > MAX_ELEMENTS) throw new IllegalArgumentException("Too many friends: " + count);
+			for(int i = 0; i < count; i++) {
+				final Friend f = p.friends[i];
+				friendIds[i] = f==null ? -1 : f.id;
+				friendNames[i] = f==null || f.name==null ? 0 : recordOffset(out, start);
+				if(f!=null && f.name!=null) utf8(f.name, out);
+			}
+			friendsTable(out, start, count);
+		}
+		endRecord(out, start);
+	}
+
+	private static int startRecord(final ChannelBuffer out) {
+		final int start = out.writerIndex();
+		out.writeZero(HEADER_SIZE);
+		out.setLong(start + REGISTERED, NULL_DATE);
+		out.setInt(start + AGE, -1);
+		out.setLong(start + INDEX, -1L);
+		out.setFloat(start + LATITUDE, -1f);
+		out.setFloat(start + LONGITUDE, -1f);
+		return start;
+	}
+
+	private static void endRecord(final ChannelBuffer out, final int start) {
+		final int length = out.writerIndex() - start;
+		if(length > MAX_RECORD_SIZE) throw new IllegalArgumentException("Record too large: " + length + " bytes");
+		out.setInt(start + LENGTH, length);
+	}
+
+	private static int recordOffset(final ChannelBuffer out, final int start) {
+		final int o = out.writerIndex() - start;
+		if(o > MAX_RECORD_SIZE) throw new IllegalArgumentException("Record too large: " + o + " bytes");
+		return o;
+	}
+
+	private static void string(final JsonParser parser, final ChannelBuffer out, final int start, final int field) throws Exception {
+		out.setShort(start + STRINGS + field*2, recordOffset(out, start));
+		utf8(parser, out);
+	}
+
+	private void string(final String s, final ChannelBuffer out, final int start, final int field) {
+		if(s==null) return;
+		out.setShort(start + STRINGS + field*2, recordOffset(out, start));
+		utf8(s, out);
+	}
+
+	private static void tags(final JsonParser parser, final ChannelBuffer out, final int start) throws Exception {
+		if(parser.getCurrentToken()!=JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return;
+		}
+		out.setShort(start + TAGS, recordOffset(out, start));
+		int count = 0;
+		while(parser.nextToken()!=JsonToken.END_ARRAY) {
+			if(++count > MAX_ELEMENTS) throw new IllegalArgumentException("Too many tags");
+			utf8(parser, out);
+		}
+		out.setByte(start + TAG_COUNT, count);
+	}
+
+	private void friends(final JsonParser parser, final ChannelBuffer out, final int start) throws Exception {
+		if(parser.getCurrentToken()!=JsonToken.START_ARRAY) {
+			parser.skipChildren();
+			return;
+		}
+		int count = 0;
+		// names go in the variable region as they arrive, the fixed size table follows once the count is known
+		while(parser.nextToken()==JsonToken.START_OBJECT) {
+			if(count==MAX_ELEMENTS) throw new IllegalArgumentException("Too many friends");
+			int id = -1, name = 0;
+			while(parser.nextToken()==JsonToken.FIELD_NAME) {
+				final String field = parser.getCurrentName();
+				final JsonToken t = parser.nextToken();
+				if("id".equals(field)) {
+					id = parser.getIntValue();
+				} else if("name".equals(field) && t!=JsonToken.VALUE_NULL) {
+					name = recordOffset(out, start);
+					utf8(parser, out);
+				} else {
+					parser.skipChildren();
+				}
+			}
+			friendIds[count] = id;
+			friendNames[count] = name;
+			count++;
+		}
+		friendsTable(out, start, count);
+	}
+
+	private void friendsTable(final ChannelBuffer out, final int start, final int count) {
+		out.setShort(start + FRIENDS, recordOffset(out, start));
+		out.setByte(start + FRIEND_COUNT, count);
+		for(int i = 0; i < count; i++) {
+			out.writeInt(friendIds[i]);
+			out.writeShort(friendNames[i]);
+		}
+	}
+
+	private static void utf8(final JsonParser parser, final ChannelBuffer out) throws Exception {
+		utf8(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength(), out);
+	}
+
+	private void utf8(final String s, final ChannelBuffer out) {
+		final int len = s.length();
+		if(chars.length < len) chars = new char[Math.max(len, chars.length * 2)];
+		s.getChars(0, len, chars, 0);
+		utf8(chars, 0, len, out);
+	}
+
+	/**
+	 * Writes the passed chars as an unsigned short length followed by the UTF-8 bytes
+	 */
+	private static void utf8(final char[] chars, final int offset, final int length, final ChannelBuffer out) {
+		final int lengthAt = out.writerIndex();
+		out.writeShort(0);
+		final int end = offset + length;
+		for(int i = offset; i < end; i++) {
+			final char c = chars[i];
+			if(c < 0x80) {
+				out.writeByte(c);
+			} else if(c < 0x800) {
+				out.writeByte(0xC0 | (c >> 6));
+				out.writeByte(0x80 | (c & 0x3F));
+			} else if(Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(chars[i+1])) {
+				final int cp = Character.toCodePoint(c, chars[++i]);
+				out.writeByte(0xF0 | (cp >> 18));
+				out.writeByte(0x80 | ((cp >> 12) & 0x3F));
+				out.writeByte(0x80 | ((cp >> 6) & 0x3F));
+				out.writeByte(0x80 | (cp & 0x3F));
+			} else {
+				out.writeByte(0xE0 | (c >> 12));
+				out.writeByte(0x80 | ((c >> 6) & 0x3F));
+				out.writeByte(0x80 | (c & 0x3F));
+			}
+		}
+		final int bytes = out.writerIndex() - lengthAt - 2;
+		if(bytes > MAX_RECORD_SIZE) throw new IllegalArgumentException("String too large: " + bytes + " bytes");
+		out.setShort(lengthAt, bytes);
+	}
+
+}
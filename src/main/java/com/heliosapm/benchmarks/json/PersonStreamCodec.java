@@ -0,0 +1,372 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.SerializableString;
+import com.fasterxml.jackson.core.io.SerializedString;
+import com.heliosapm.benchmarks.json.PersonCodec.CodecContext;
+
+/**
+ * <p>Title: PersonStreamCodec</p>
+ * <p>Description: Hand written streaming codec for {@link Person} and {@link Friend} which bypasses databind.
+ * Reads dispatch on the field name with a string switch and writes use pre-encoded field names, with the
+ * primitive fields read and written directly, so there is no bean property lookup, reflection or boxing.
+ * The output is identical to the databind output. Unknown fields are skipped rather than failing.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonStreamCodec</code></p>
+ */
+
+public class PersonStreamCodec {
+	/** The initial capacity of the friends list */
+	public static final int INITIAL_FRIENDS = 4;
+
+	private static final SerializableString ID = new SerializedString("_id");
+	private static final SerializableString INDEX = new SerializedString("index");
+	private static final SerializableString GUID = new SerializedString("guid");
+	private static final SerializableString ACTIVE = new SerializedString("isActive");
+	private static final SerializableString PICTURE = new SerializedString("picture");
+	private static final SerializableString AGE = new SerializedString("age");
+	private static final SerializableString EYE_COLOR = new SerializedString("eyeColor");
+	private static final SerializableString NAME = new SerializedString("name");
+	private static final SerializableString GENDER = new SerializedString("gender");
+	private static final SerializableString COMPANY = new SerializedString("company");
+	private static final SerializableString EMAIL = new SerializedString("email");
+	private static final SerializableString PHONE = new SerializedString("phone");
+	private static final SerializableString ADDRESS = new SerializedString("address");
+	private static final SerializableString REGISTERED = new SerializedString("registered");
+	private static final SerializableString LATITUDE = new SerializedString("latitude");
+	private static final SerializableString LONGITUDE = new SerializedString("longitude");
+	private static final SerializableString TAGS = new SerializedString("tags");
+	private static final SerializableString FRIENDS = new SerializedString("friends");
+	private static final SerializableString GREETING = new SerializedString("greeting");
+	private static final SerializableString FAVORITE_FRUIT = new SerializedString("favoriteFruit");
+	private static final SerializableString FRIEND_ID = new SerializedString("id");
+
+	/** The factory parsers and generators are created from */
+	private final JsonFactory factory;
+	/** The canonicalizer for low cardinality values, or null to create a new string for every value */
+	private final StringCanonicalizer canonicalizer;
+
+	/** The per-thread scratch state */
+	private final ThreadLocal<CodecContext> contexts = new ThreadLocal<CodecContext>() {
+		@Override
+		protected CodecContext initialValue() {
+			return new CodecContext();
+		}
+	};
+
+	/**
+	 * Creates a new PersonStreamCodec
+	 * @param factory The factory parsers and generators are created from
+	 */
+	public PersonStreamCodec(final JsonFactory factory) {
+		this(factory, null);
+	}
+
+	/**
+	 * Creates a new PersonStreamCodec which shares the instances of the eye color, gender, company,
+	 * favorite fruit and tag values through the passed canonicalizer
+	 * @param factory The factory parsers and generators are created from
+	 * @param canonicalizer The canonicalizer for low cardinality values, or null for none
+	 */
+	public PersonStreamCodec(final JsonFactory factory, final StringCanonicalizer canonicalizer) {
+		if(factory==null) throw new IllegalArgumentException("The passed factory was null");
+		this.factory = factory;
+		this.canonicalizer = canonicalizer;
+	}
+
+	// ==========================================================================================
+	//   Reads
+	// ==========================================================================================
+
+	/**
+	 * Reads an array of persons from the passed buffer
+	 * @param json The buffer containing a JSON array of persons
+	 * @return the persons
+	 */
+	public Person[] readPersons(final ChannelBuffer json) {
+		JsonParser parser = null;
+		try {
+			parser = parser(json);
+			if(parser.nextToken()!=JsonToken.START_ARRAY) throw new IllegalArgumentException("Expected a JSON array");
+			final List<Person> persons = new ArrayList<Person>();
+			while(parser.nextToken()==JsonToken.START_OBJECT) {
+				persons.add(readPerson(parser));
+			}
+			json.skipBytes(json.readableBytes());
+			return persons.toArray(new Person[persons.size()]);
+		} catch (IllegalArgumentException iex) {
+			throw iex;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		} finally {
+			if(parser!=null) try { parser.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	/**
+	 * Reads a single person from the passed buffer
+	 * @param json The buffer containing a JSON person object
+	 * @return the person
+	 */
+	public Person readPerson(final ChannelBuffer json) {
+		JsonParser parser = null;
+		try {
+			parser = parser(json);
+			if(parser.nextToken()!=JsonToken.START_OBJECT) throw new IllegalArgumentException("Expected a JSON object");
+			final Person p = readPerson(parser);
+			json.skipBytes(json.readableBytes());
+			return p;
+		} catch (IllegalArgumentException iex) {
+			throw iex;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		} finally {
+			if(parser!=null) try { parser.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	/**
+	 * Reads a person from the passed parser
+	 * @param parser The parser, positioned at the start of the person object
+	 * @return the person
+	 * @throws Exception thrown on any parsing error
+	 */
+	public Person readPerson(final JsonParser parser) throws Exception {
+		final Person p = new Person();
+		while(parser.nextToken()==JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			parser.nextToken();
+			switch(field) {
+				case "_id": p.id = parser.getValueAsString(); break;
+				case "index": p.index = parser.getLongValue(); break;
+				case "guid": p.guid = parser.getValueAsString(); break;
+				case "isActive": p.active = parser.getBooleanValue(); break;
+				case "picture": p.picture = parser.getValueAsString(); break;
+				case "age": p.age = parser.getIntValue(); break;
+				case "eyeColor": p.eyeColor = vocabulary(parser); break;
+				case "name": p.name = parser.getValueAsString(); break;
+				case "gender": p.gender = vocabulary(parser); break;
+				case "company": p.company = vocabulary(parser); break;
+				case "email": p.email = parser.getValueAsString(); break;
+				case "phone": p.phone = parser.getValueAsString(); break;
+				case "address": p.address = parser.getValueAsString(); break;
+				case "registered": p.registered = PersonDates.parse(parser.getValueAsString()); break;
+				case "latitude": p.latitude = parser.getFloatValue(); break;
+				case "longitude": p.longitude = parser.getFloatValue(); break;
+				case "tags": p.tags = readTags(parser); break;
+				case "friends": p.friends = readFriends(parser); break;
+				case "greeting": p.greeting = parser.getValueAsString(); break;
+				case "favoriteFruit": p.favoriteFruit = vocabulary(parser); break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Reads a friend from the passed parser
+	 * @param parser The parser, positioned at the start of the friend object
+	 * @return the friend
+	 * @throws Exception thrown on any parsing error
+	 */
+	public Friend readFriend(final JsonParser parser) throws Exception {
+		final Friend f = new Friend();
+		while(parser.nextToken()==JsonToken.FIELD_NAME) {
+			final String field = parser.getCurrentName();
+			parser.nextToken();
+			switch(field) {
+				case "id": f.id = parser.getIntValue(); break;
+				case "name": f.name = parser.getValueAsString(); break;
+				default:
+					parser.skipChildren();
+			}
+		}
+		return f;
+	}
+
+	private Set<String> readTags(final JsonParser parser) throws Exception {
+		if(parser.getCurrentToken()!=JsonToken.START_ARRAY) return null;
+		final Set<String> tags = new HashSet<String>();
+		while(parser.nextToken()!=JsonToken.END_ARRAY) {
+			tags.add(vocabulary(parser));
+		}
+		return tags;
+	}
+
+	/**
+	 * Reads a low cardinality string value, resolving it from the parser's characters through the canonicalizer if there is one
+	 */
+	private String vocabulary(final JsonParser parser) throws Exception {
+		if(canonicalizer==null || parser.getCurrentToken()!=JsonToken.VALUE_STRING) return parser.getValueAsString();
+		return canonicalizer.canonical(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+	}
+
+	private Friend[] readFriends(final JsonParser parser) throws Exception {
+		if(parser.getCurrentToken()!=JsonToken.START_ARRAY) return null;
+		final List<Friend> friends = new ArrayList<Friend>(INITIAL_FRIENDS);
+		JsonToken t;
+		while((t = parser.nextToken())!=JsonToken.END_ARRAY) {
+			friends.add(t==JsonToken.START_OBJECT ? readFriend(parser) : null);
+		}
+		return friends.toArray(new Friend[friends.size()]);
+	}
+
+	/**
+	 * Creates a byte parser over the readable bytes of the passed buffer, copying direct buffers into the thread's scratch array
+	 */
+	private JsonParser parser(final ChannelBuffer json) throws Exception {
+		if (json == null || json.readableBytes()<2)
+			throw new IllegalArgumentException("Incoming data was null or empty");
+		final int len = json.readableBytes();
+		if(json.hasArray()) {
+			return factory.createParser(json.array(), json.arrayOffset() + json.readerIndex(), len);
+		}
+		final byte[] bytes = contexts.get().input(len);
+		json.getBytes(json.readerIndex(), bytes, 0, len);
+		return factory.createParser(bytes, 0, len);
+	}
+
+	// ==========================================================================================
+	//   Writes
+	// ==========================================================================================
+
+	/**
+	 * Writes an array of persons to an exactly sized buffer created by the passed factory
+	 * @param bufferFactory The factory to create the output buffer with
+	 * @param persons The persons to write
+	 * @return the buffer containing the JSON
+	 */
+	public ChannelBuffer write(final ChannelBufferFactory bufferFactory, final Person...persons) {
+		if (persons == null)
+			throw new IllegalArgumentException("Persons were null");
+		final CodecContext ctx = contexts.get();
+		JsonGenerator gen = null;
+		try {
+			gen = factory.createGenerator((OutputStream)ctx.output(), JsonEncoding.UTF8);
+			writePersons(gen, persons);
+			gen.flush();
+			final ChannelBuffer b = bufferFactory.getBuffer(ctx.output.readableBytes());
+			b.writeBytes(ctx.output);
+			return b;
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		} finally {
+			if(gen!=null) try { gen.close(); } catch (Exception x) {/* No Op */}
+		}
+	}
+
+	/**
+	 * Writes an array of persons to the passed generator
+	 * @param gen The generator to write to
+	 * @param persons The persons to write
+	 * @throws Exception thrown on any generator error
+	 */
+	public void writePersons(final JsonGenerator gen, final Person...persons) throws Exception {
+		gen.writeStartArray();
+		for(Person p: persons) {
+			writePerson(gen, p);
+		}
+		gen.writeEndArray();
+	}
+
+	/**
+	 * Writes a person to the passed generator
+	 * @param gen The generator to write to
+	 * @param p The person to write
+	 * @throws Exception thrown on any generator error
+	 */
+	public void writePerson(final JsonGenerator gen, final Person p) throws Exception {
+		if(p==null) {
+			gen.writeNull();
+			return;
+		}
+		gen.writeStartObject();
+		gen.writeFieldName(ID); gen.writeString(p.id);
+		gen.writeFieldName(INDEX); gen.writeNumber(p.index);
+		gen.writeFieldName(GUID); gen.writeString(p.guid);
+		gen.writeFieldName(ACTIVE); gen.writeBoolean(p.active);
+		gen.writeFieldName(PICTURE); gen.writeString(p.picture);
+		gen.writeFieldName(AGE); gen.writeNumber(p.age);
+		gen.writeFieldName(EYE_COLOR); gen.writeString(p.eyeColor);
+		gen.writeFieldName(NAME); gen.writeString(p.name);
+		gen.writeFieldName(GENDER); gen.writeString(p.gender);
+		gen.writeFieldName(COMPANY); gen.writeString(p.company);
+		gen.writeFieldName(EMAIL); gen.writeString(p.email);
+		gen.writeFieldName(PHONE); gen.writeString(p.phone);
+		gen.writeFieldName(ADDRESS); gen.writeString(p.address);
+		gen.writeFieldName(REGISTERED); gen.writeString(PersonDates.format(p.registered));
+		gen.writeFieldName(LATITUDE); gen.writeNumber(p.latitude);
+		gen.writeFieldName(LONGITUDE); gen.writeNumber(p.longitude);
+		gen.writeFieldName(TAGS);
+		if(p.tags==null) {
+			gen.writeNull();
+		} else {
+			gen.writeStartArray();
+			for(String tag: p.tags) {
+				gen.writeString(tag);
+			}
+			gen.writeEndArray();
+		}
+		gen.writeFieldName(FRIENDS);
+		if(p.friends==null) {
+			gen.writeNull();
+		} else {
+			gen.writeStartArray();
+			for(Friend f: p.friends) {
+				writeFriend(gen, f);
+			}
+			gen.writeEndArray();
+		}
+		gen.writeFieldName(GREETING); gen.writeString(p.greeting);
+		gen.writeFieldName(FAVORITE_FRUIT); gen.writeString(p.favoriteFruit);
+		gen.writeEndObject();
+	}
+
+	/**
+	 * Writes a friend to the passed generator
+	 * @param gen The generator to write to
+	 * @param f The friend to write
+	 * @throws Exception thrown on any generator error
+	 */
+	public void writeFriend(final JsonGenerator gen, final Friend f) throws Exception {
+		if(f==null) {
+			gen.writeNull();
+			return;
+		}
+		gen.writeStartObject();
+		gen.writeFieldName(FRIEND_ID); gen.writeNumber(f.id);
+		gen.writeFieldName(NAME); gen.writeString(f.name);
+		gen.writeEndObject();
+	}
+
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * <p>Title: PersonStreamReader</p>
+ * <p>Description: Pull style reader that walks a top level JSON array of persons token by token
+ * and binds one {@link Person} at a time, so only the current record is live regardless of document size.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.PersonStreamReader</code></p>
+ */
+
+public class PersonStreamReader implements Iterator<Person>, Closeable {
+	/** The mapper used to bind each array element */
+	private final ObjectMapper mapper;
+	/** The underlying stream */
+	private final InputStream is;
+	/** The reader wrapping the stream, or null if the bytes are parsed directly */
+	private final Reader reader;
+	/** The token parser */
+	private final JsonParser parser;
+	/** The next person to be returned, or null if not read yet */
+	private Person next = null;
+	/** Indicates the end of the array has been reached */
+	private boolean done = false;
+	/** The number of persons handed out so far */
+	private int count = 0;
+
+	/**
+	 * <p>Title: PersonHandler</p>
+	 * <p>Description: Callback invoked for each person read by {@link PersonStreamReader#read(PersonHandler)}</p>
+	 * <p><code>com.heliosapm.benchmarks.json.PersonStreamReader.PersonHandler</code></p>
+	 */
+	public static interface PersonHandler {
+		/**
+		 * Callback on each person read from the stream
+		 * @param index The zero based index of the person in the array
+		 * @param person The person
+		 * @return true to continue reading, false to stop
+		 */
+		public boolean onPerson(int index, Person person);
+	}
+
+	/**
+	 * Creates a new PersonStreamReader which decodes the buffer to chars through a {@link Reader}
+	 * @param mapper The mapper used to bind each array element
+	 * @param json The buffer containing a JSON array of persons
+	 */
+	PersonStreamReader(final ObjectMapper mapper, final ChannelBuffer json) {
+		this(mapper, new ChannelBufferInputStream(checked(json)), true);
+	}
+
+	/**
+	 * Creates a new PersonStreamReader
+	 * @param mapper The mapper used to bind each array element
+	 * @param is The stream containing a JSON array of persons
+	 * @param decodeChars true to decode the stream to chars through a {@link Reader}, 
+	 * false to feed the bytes directly to the UTF-8 byte parser
+	 */
+	PersonStreamReader(final ObjectMapper mapper, final InputStream is, final boolean decodeChars) {
+		if(is==null) throw new IllegalArgumentException("The passed input stream was null");
+		this.mapper = mapper;
+		this.is = is;
+		reader = decodeChars ? new InputStreamReader(is, JSONUnmarshalling.UTF8) : null;
+		JsonParser p = null;
+		try {
+			p = reader!=null ? mapper.getFactory().createParser(reader) : mapper.getFactory().createParser(is);
+			final JsonToken t = p.nextToken();
+			if(t!=JsonToken.START_ARRAY) {
+				throw new IllegalArgumentException("Expected a JSON array but found [" + t + "]");
+			}
+		} catch (Exception ex) {
+			if(p!=null) try { p.close(); } catch (Exception x) {/* No Op */}
+			if(reader!=null) try { reader.close(); } catch (Exception x) {/* No Op */}
+			try { is.close(); } catch (Exception x) {/* No Op */}
+			if(ex instanceof IllegalArgumentException) throw (IllegalArgumentException)ex;
+			throw new RuntimeException(ex);
+		}
+		parser = p;
+	}
+
+	private static ChannelBuffer checked(final ChannelBuffer json) {
+		if(json==null || json.readableBytes()<2) throw new IllegalArgumentException("Incoming data was null or empty");
+		return json;
+	}
+
+	/**
+	 * Reads all the remaining persons, passing each to the passed handler
+	 * @param handler The handler to pass each person to
+	 * @return the number of persons handed to the handler
+	 */
+	public int read(final PersonHandler handler) {
+		if(handler==null) throw new IllegalArgumentException("The passed handler was null");
+		final int start = count;
+		while(hasNext()) {
+			final int index = count;
+			if(!handler.onPerson(index, next())) break;
+		}
+		return count - start;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Iterator#hasNext()
+	 */
+	@Override
+	public boolean hasNext() {
+		if(next!=null) return true;
+		if(done) return false;
+		try {
+			final JsonToken t = parser.nextToken();
+			if(t==JsonToken.START_OBJECT) {
+				next = mapper.readValue(parser, Person.class);
+				return true;
+			}
+			if(t!=JsonToken.END_ARRAY) {
+				throw new IllegalStateException("Unexpected token in person array [" + t + "]");
+			}
+			done = true;
+			close();
+			return false;
+		} catch (IllegalStateException isx) {
+			throw isx;
+		} catch (Exception ex) {
+			throw new RuntimeException(ex);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Iterator#next()
+	 */
+	@Override
+	public Person next() {
+		if(!hasNext()) throw new NoSuchElementException();
+		final Person p = next;
+		next = null;
+		count++;
+		return p;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.util.Iterator#remove()
+	 */
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns the number of persons read so far
+	 * @return the number of persons read so far
+	 */
+	public int getCount() {
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.io.Closeable#close()
+	 */
+	@Override
+	public void close() {
+		done = true;
+		try { parser.close(); } catch (Exception x) {/* No Op */}
+		if(reader!=null) try { reader.close(); } catch (Exception x) {/* No Op */}
+		try { is.close(); } catch (Exception x) {/* No Op */}
+	}
+
+}
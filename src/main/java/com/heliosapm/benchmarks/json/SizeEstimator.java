@@ -0,0 +1,88 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Title: SizeEstimator</p>
+ * <p>Description: Tracks a moving average of the serialized size per item for each type
+ * so output buffers can be sized from observed output rather than a fixed guess.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.SizeEstimator</code></p>
+ */
+
+public class SizeEstimator {
+	/** The shift applied to the difference between an observation and the average (weight of 1/8) */
+	public static final int SMOOTHING_SHIFT = 3;
+	/** The shift used to compute the headroom added to estimates (1/16) */
+	public static final int HEADROOM_SHIFT = 4;
+
+	/** The estimate used for types with no observations */
+	private final int initialSize;
+	/** The average bytes per item keyed by type */
+	private final ConcurrentHashMap<Class<?>, AtomicInteger> averages = new ConcurrentHashMap<Class<?>, AtomicInteger>();
+
+	/**
+	 * Creates a new SizeEstimator
+	 * @param initialSize The bytes per item estimate used for types with no observations
+	 */
+	public SizeEstimator(final int initialSize) {
+		if(initialSize < 1) throw new IllegalArgumentException("Invalid initial size: " + initialSize);
+		this.initialSize = initialSize;
+	}
+
+	/**
+	 * Returns the estimated serialized size of the passed number of items of the passed type,
+	 * including a small headroom so an average sized output does not trigger a buffer expansion
+	 * @param type The item type
+	 * @param count The number of items
+	 * @return the estimated size in bytes
+	 */
+	public int estimate(final Class<?> type, final int count) {
+		final long perItem = average(type).get();
+		final long size = (perItem + (perItem >> HEADROOM_SHIFT)) * Math.max(count, 1);
+		return (int)Math.min(size, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Records an observed serialized size
+	 * @param type The item type
+	 * @param count The number of items serialized
+	 * @param bytes The number of bytes the items serialized to
+	 */
+	public void record(final Class<?> type, final int count, final int bytes) {
+		if(count < 1 || bytes < 1) return;
+		final AtomicInteger avg = average(type);
+		final int observed = bytes / count;
+		final int current = avg.get();
+		// lost updates under contention are harmless, this is only an estimate
+		avg.lazySet(current + ((observed - current) >> SMOOTHING_SHIFT));
+	}
+
+	private AtomicInteger average(final Class<?> type) {
+		AtomicInteger avg = averages.get(type);
+		if(avg==null) {
+			final AtomicInteger newAvg = new AtomicInteger(initialSize);
+			avg = averages.putIfAbsent(type, newAvg);
+			if(avg==null) avg = newAvg;
+		}
+		return avg;
+	}
+
+}
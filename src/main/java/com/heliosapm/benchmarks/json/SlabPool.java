@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBufferFactory;
+import org.jboss.netty.buffer.ChannelBuffers;
+
+/**
+ * <p>Title: SlabPool</p>
+ * <p>Description: A recycling pool of fixed size heap or direct slabs. Output is written into a chain of slabs
+ * which is exposed as a single composite buffer and handed back to the pool on release.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.SlabPool</code></p>
+ */
+
+public class SlabPool {
+	/** The default slab size in bytes */
+	public static final int DEFAULT_SLAB_SIZE = 16384;
+	/** The default maximum number of idle slabs retained by the pool */
+	public static final int DEFAULT_MAX_POOLED = 1024;
+
+	/** The factory slabs are allocated from */
+	private final ChannelBufferFactory factory;
+	/** The size of each slab */
+	private final int slabSize;
+	/** The maximum number of idle slabs retained */
+	private final int maxPooled;
+	/** The idle slabs */
+	private final ConcurrentLinkedQueue<ChannelBuffer> slabs = new ConcurrentLinkedQueue<ChannelBuffer>();
+	/** The number of idle slabs */
+	private final AtomicInteger pooled = new AtomicInteger(0);
+	/** The number of slabs allocated from the factory */
+	private final AtomicLong allocated = new AtomicLong(0L);
+	/** The number of slab acquisitions satisfied from the pool */
+	private final AtomicLong recycled = new AtomicLong(0L);
+
+	/**
+	 * Creates a new SlabPool
+	 * @param factory The factory slabs are allocated from
+	 * @param slabSize The size of each slab in bytes
+	 * @param maxPooled The maximum number of idle slabs retained by the pool
+	 */
+	public SlabPool(final ChannelBufferFactory factory, final int slabSize, final int maxPooled) {
+		if(factory==null) throw new IllegalArgumentException("The passed factory was null");
+		if(slabSize < 1) throw new IllegalArgumentException("Invalid slab size: " + slabSize);
+		if(maxPooled < 0) throw new IllegalArgumentException("Invalid max pooled: " + maxPooled);
+		this.factory = factory;
+		this.slabSize = slabSize;
+		this.maxPooled = maxPooled;
+	}
+
+	/**
+	 * Creates a new SlabPool with the default slab size and maximum
+	 * @param factory The factory slabs are allocated from
+	 */
+	public SlabPool(final ChannelBufferFactory factory) {
+		this(factory, DEFAULT_SLAB_SIZE, DEFAULT_MAX_POOLED);
+	}
+
+	/**
+	 * Acquires a cleared slab, from the pool if one is idle, otherwise from the factory
+	 * @return a slab
+	 */
+	public ChannelBuffer acquire() {
+		final ChannelBuffer slab = slabs.poll();
+		if(slab!=null) {
+			pooled.decrementAndGet();
+			recycled.incrementAndGet();
+			slab.clear();
+			return slab;
+		}
+		allocated.incrementAndGet();
+		return factory.getBuffer(slabSize);
+	}
+
+	/**
+	 * Returns a slab to the pool. The slab is dropped if the pool is full.
+	 * @param slab The slab to return
+	 */
+	public void release(final ChannelBuffer slab) {
+		if(slab==null || slab.capacity()!=slabSize) return;
+		if(pooled.incrementAndGet() > maxPooled) {
+			pooled.decrementAndGet();
+			return;
+		}
+		slabs.offer(slab);
+	}
+
+	/**
+	 * Opens a new output stream that writes into slabs from this pool
+	 * @param estimatedSize The estimated number of bytes that will be written
+	 * @return the output stream
+	 */
+	public SlabOutputStream stream(final int estimatedSize) {
+		return new SlabOutputStream(this, (Math.max(estimatedSize, 1) + slabSize - 1) / slabSize);
+	}
+
+	/**
+	 * Returns the slab size in bytes
+	 * @return the slab size in bytes
+	 */
+	public int getSlabSize() {
+		return slabSize;
+	}
+
+	/**
+	 * Returns the number of idle slabs in the pool
+	 * @return the number of idle slabs in the pool
+	 */
+	public int getPooled() {
+		return pooled.get();
+	}
+
+	/**
+	 * Returns the number of slabs allocated from the factory
+	 * @return the number of slabs allocated from the factory
+	 */
+	public long getAllocated() {
+		return allocated.get();
+	}
+
+	/**
+	 * Returns the number of acquisitions satisfied from the pool
+	 * @return the number of acquisitions satisfied from the pool
+	 */
+	public long getRecycled() {
+		return recycled.get();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "SlabPool [factory=" + factory.getClass().getSimpleName() + ", slabSize=" + slabSize + ", pooled=" + pooled.get()
+				+ ", allocated=" + allocated.get() + ", recycled=" + recycled.get() + "]";
+	}
+
+	/**
+	 * <p>Title: SlabOutputStream</p>
+	 * <p>Description: Output stream that writes into a chain of slabs acquired from a {@link SlabPool}</p>
+	 * <p><code>com.heliosapm.benchmarks.json.SlabPool.SlabOutputStream</code></p>
+	 */
+	public static class SlabOutputStream extends OutputStream {
+		/** The pool slabs are acquired from */
+		private final SlabPool pool;
+		/** The slabs written so far */
+		private final List<ChannelBuffer> chain;
+		/** The slab currently being written to */
+		private ChannelBuffer current = null;
+
+		SlabOutputStream(final SlabPool pool, final int estimatedSlabs) {
+			this.pool = pool;
+			chain = new ArrayList<ChannelBuffer>(estimatedSlabs);
+		}
+
+		private ChannelBuffer current() {
+			if(current==null || !current.writable()) {
+				current = pool.acquire();
+				chain.add(current);
+			}
+			return current;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.io.OutputStream#write(int)
+		 */
+		@Override
+		public void write(final int b) {
+			current().writeByte(b);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 * @see java.io.OutputStream#write(byte[], int, int)
+		 */
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+			int offset = off;
+			int remaining = len;
+			while(remaining > 0) {
+				final ChannelBuffer slab = current();
+				final int chunk = Math.min(remaining, slab.writableBytes());
+				slab.writeBytes(b, offset, chunk);
+				offset += chunk;
+				remaining -= chunk;
+			}
+		}
+
+		/**
+		 * Returns the written slabs as a pooled buffer and detaches them from this stream
+		 * @return the pooled buffer
+		 */
+		public PooledBuffer toPooledBuffer() {
+			final ChannelBuffer[] slabs = chain.toArray(new ChannelBuffer[chain.size()]);
+			chain.clear();
+			current = null;
+			return new PooledBuffer(pool, slabs);
+		}
+	}
+
+	/**
+	 * <p>Title: PooledBuffer</p>
+	 * <p>Description: A composite view over a chain of pooled slabs which returns the slabs to the pool on release</p>
+	 * <p><code>com.heliosapm.benchmarks.json.SlabPool.PooledBuffer</code></p>
+	 */
+	public static class PooledBuffer {
+		/** The pool the slabs are returned to */
+		private final SlabPool pool;
+		/** The slabs */
+		private final ChannelBuffer[] slabs;
+		/** The composite view over the slabs */
+		private final ChannelBuffer buffer;
+		/** Indicates if the slabs have been released */
+		private boolean released = false;
+
+		PooledBuffer(final SlabPool pool, final ChannelBuffer[] slabs) {
+			this.pool = pool;
+			this.slabs = slabs;
+			buffer = slabs.length==0 ? ChannelBuffers.EMPTY_BUFFER : ChannelBuffers.wrappedBuffer(slabs);
+		}
+
+		/**
+		 * Returns the composite view over the slabs. Not valid after {@link #release()}.
+		 * @return the composite buffer
+		 */
+		public ChannelBuffer buffer() {
+			if(released) throw new IllegalStateException("Buffer has been released");
+			return buffer;
+		}
+
+		/**
+		 * Returns the number of slabs in the chain
+		 * @return the number of slabs in the chain
+		 */
+		public int slabCount() {
+			return slabs.length;
+		}
+
+		/**
+		 * Returns the slabs to the pool
+		 */
+		public void release() {
+			if(released) return;
+			released = true;
+			for(ChannelBuffer slab: slabs) {
+				pool.release(slab);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.jboss.netty.buffer.ChannelBuffer;
+
+/**
+ * <p>Title: StringCanonicalizer</p>
+ * <p>Description: Bounded, lossy, thread safe table of shared string instances for values drawn from small
+ * vocabularies, such as eye colors or tags. A value is looked up straight from the parser's character buffer,
+ * or from UTF-8 bytes in a {@link ChannelBuffer}, and a new string is only created on a miss.</p>
+ * <p>The table is two way set associative: each value hashes to a pair of entries, a hit in the second entry
+ * is promoted to the first, and a miss pushes the first entry into the second, dropping the older value.
+ * The table never grows and needs no locking, and a value seen often is not displaced by a run of one-off values
+ * hashing to the same pair. Values longer than the maximum length are never cached.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.StringCanonicalizer</code></p>
+ */
+
+public class StringCanonicalizer {
+	/** The default number of entries */
+	public static final int DEFAULT_CAPACITY = 4096;
+	/** The default maximum length of a cached value */
+	public static final int DEFAULT_MAX_LENGTH = 32;
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/** The canonical instances */
+	private final AtomicReferenceArray<String> table;
+	/** The table mask */
+	private final int mask;
+	/** The maximum length of a cached value */
+	private final int maxLength;
+
+	/**
+	 * Creates a new StringCanonicalizer with the default capacity and maximum length
+	 */
+	public StringCanonicalizer() {
+		this(DEFAULT_CAPACITY, DEFAULT_MAX_LENGTH);
+	}
+
+	/**
+	 * Creates a new StringCanonicalizer
+	 * @param capacity The number of entries, rounded up to a power of 2 and at least 2
+	 * @param maxLength The maximum length of a cached value
+	 */
+	public StringCanonicalizer(final int capacity, final int maxLength) {
+		if(capacity < 1 || capacity > (1 << 30)) throw new IllegalArgumentException("Invalid capacity: " + capacity);
+		if(maxLength < 1) throw new IllegalArgumentException("Invalid max length: " + maxLength);
+		int size = 2;
+		while(size < capacity) size <<= 1;
+		table = new AtomicReferenceArray<String>(size);
+		mask = size - 2;
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * Returns the canonical instance of the passed characters
+	 * @param chars The character buffer
+	 * @param offset The offset of the value in the buffer
+	 * @param length The length of the value
+	 * @return the canonical string
+	 */
+	public String canonical(final char[] chars, final int offset, final int length) {
+		if(length > maxLength) return new String(chars, offset, length);
+		int h = 0;
+		for(int i = offset, end = offset + length; i < end; i++) {
+			h = 31 * h + chars[i];
+		}
+		final int slot = slot(h);
+		String s = table.get(slot);
+		if(s!=null && equals(s, chars, offset, length)) return s;
+		s = table.get(slot + 1);
+		if(s!=null && equals(s, chars, offset, length)) return promote(slot, s);
+		return insert(slot, new String(chars, offset, length));
+	}
+
+	/**
+	 * Returns the canonical instance of the passed UTF-8 bytes. Only ASCII values are matched in place,
+	 * other values are decoded first.
+	 * @param buffer The buffer containing the bytes
+	 * @param index The buffer index of the value
+	 * @param length The length of the value in bytes
+	 * @return the canonical string
+	 */
+	public String canonical(final ChannelBuffer buffer, final int index, final int length) {
+		if(length > maxLength) return buffer.toString(index, length, UTF8);
+		// for ASCII the byte values are the char values, so the hash matches the char[] lookup
+		int h = 0;
+		for(int i = index, end = index + length; i < end; i++) {
+			final byte b = buffer.getByte(i);
+			if(b < 0) return canonical(buffer.toString(index, length, UTF8));
+			h = 31 * h + b;
+		}
+		final int slot = slot(h);
+		String s = table.get(slot);
+		if(s!=null && equals(s, buffer, index, length)) return s;
+		s = table.get(slot + 1);
+		if(s!=null && equals(s, buffer, index, length)) return promote(slot, s);
+		return insert(slot, buffer.toString(index, length, UTF8));
+	}
+
+	/**
+	 * Returns the canonical instance of the passed string
+	 * @param value The string
+	 * @return the canonical string, or null if the value was null
+	 */
+	public String canonical(final String value) {
+		if(value==null || value.length() > maxLength) return value;
+		final int slot = slot(value.hashCode());
+		String s = table.get(slot);
+		if(value.equals(s)) return s;
+		s = table.get(slot + 1);
+		if(value.equals(s)) return promote(slot, s);
+		return insert(slot, value);
+	}
+
+	/**
+	 * Returns the number of occupied entries
+	 * @return the number of cached values
+	 */
+	public int size() {
+		int n = 0;
+		for(int i = 0, len = table.length(); i < len; i++) {
+			if(table.get(i)!=null) n++;
+		}
+		return n;
+	}
+
+	/**
+	 * Returns the number of entries
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return table.length();
+	}
+
+	/**
+	 * Returns the index of the first entry of the pair the passed hash maps to
+	 */
+	private int slot(final int hash) {
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/**
+	 * Swaps a value found in the second entry of a pair into the first.
+	 * Racing updates can lose or duplicate an entry, which only costs a later miss.
+	 */
+	private String promote(final int slot, final String value) {
+		table.lazySet(slot + 1, table.get(slot));
+		table.lazySet(slot, value);
+		return value;
+	}
+
+	/**
+	 * Makes a missed value the first entry of its pair, moving the previous first entry to the second
+	 */
+	private String insert(final int slot, final String value) {
+		final String first = table.get(slot);
+		if(first!=null) table.lazySet(slot + 1, first);
+		table.lazySet(slot, value);
+		return value;
+	}
+
+	private static boolean equals(final String s, final char[] chars, final int offset, final int length) {
+		if(s.length()!=length) return false;
+		for(int i = 0; i < length; i++) {
+			if(s.charAt(i)!=chars[offset + i]) return false;
+		}
+		return true;
+	}
+
+	private static boolean equals(final String s, final ChannelBuffer buffer, final int index, final int length) {
+		if(s.length()!=length) return false;
+		for(int i = 0; i < length; i++) {
+			if(s.charAt(i)!=buffer.getByte(index + i)) return false;
+		}
+		return true;
+	}
+
+}
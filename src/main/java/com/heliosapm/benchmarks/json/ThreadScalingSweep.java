@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import com.heliosapm.utils.config.ConfigurationHelper;
+
+/**
+ * <p>Title: ThreadScalingSweep</p>
+ * <p>Description: Runs the selected benchmarks at thread counts from 1 up to the number of cores
+ * and reports the throughput per thread and the scaling efficiency relative to a single thread.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.ThreadScalingSweep</code></p>
+ * <p>Usage: <b><code>ThreadScalingSweep [include regex] [param=value ...]</code></b></p>
+ */
+
+public class ThreadScalingSweep {
+	/** The number of cores, read directly so the sweep host does not load the sample data */
+	public static final int CORES = Runtime.getRuntime().availableProcessors();
+	/** The default benchmark include pattern */
+	public static final String DEFAULT_INCLUDE = ".*JSONUnmarshalling.matrix";
+
+	/**
+	 * Runs the sweep
+	 * @param args The optional include regex followed by optional <code>param=value</code> benchmark parameter overrides
+	 * @throws Exception thrown on any error
+	 */
+	public static void main(final String[] args) throws Exception {
+		final String include = args.length > 0 ? args[0] : DEFAULT_INCLUDE;
+		final int maxThreads = ConfigurationHelper.getIntSystemThenEnvProperty("sweep.maxthreads", CORES);
+		final int seconds = ConfigurationHelper.getIntSystemThenEnvProperty("sweep.seconds", 5);
+		final int iterations = ConfigurationHelper.getIntSystemThenEnvProperty("sweep.iterations", 5);
+		// benchmark key -> (threads -> score)
+		final Map<String, Map<Integer, Double>> scores = new LinkedHashMap<String, Map<Integer, Double>>();
+		String unit = null;
+		for(int threads: threadCounts(maxThreads)) {
+			final ChainedOptionsBuilder opt = new OptionsBuilder()
+				.include(include)
+				.mode(Mode.Throughput)
+				.timeUnit(TimeUnit.MILLISECONDS)
+				.warmupTime(TimeValue.seconds(seconds))
+				.warmupIterations(iterations)
+				.measurementTime(TimeValue.seconds(seconds))
+				.measurementIterations(iterations)
+				.threads(threads)
+				.forks(1)
+				.shouldFailOnError(true)
+				.shouldDoGC(true);
+			for(int i = 1; i < args.length; i++) {
+				final int index = args[i].indexOf('=');
+				if(index < 1) throw new IllegalArgumentException("Invalid param override [" + args[i] + "]");
+				opt.param(args[i].substring(0, index), args[i].substring(index+1).split(","));
+			}
+			final Collection<RunResult> results = new Runner(opt.build()).run();
+			for(RunResult rr: results) {
+				final String key = key(rr);
+				Map<Integer, Double> byThreads = scores.get(key);
+				if(byThreads==null) {
+					byThreads = new LinkedHashMap<Integer, Double>();
+					scores.put(key, byThreads);
+				}
+				byThreads.put(threads, rr.getPrimaryResult().getScore());
+				unit = rr.getPrimaryResult().getScoreUnit();
+			}
+		}
+		log("\n\t============================================\n\tThread Scaling Sweep (%s cores)\n\t============================================", CORES);
+		for(Map.Entry<String, Map<Integer, Double>> entry: scores.entrySet()) {
+			log("\n%s", entry.getKey());
+			log("%8s %16s %16s %12s", "Threads", "Score " + unit, "Per Thread", "Efficiency");
+			final Double single = entry.getValue().get(1);
+			for(Map.Entry<Integer, Double> s: entry.getValue().entrySet()) {
+				final int threads = s.getKey();
+				final double score = s.getValue();
+				final double perThread = score / threads;
+				final String efficiency = single==null || single==0D ? "n/a" : String.format("%.1f%%", perThread / single * 100D);
+				log("%8s %16.3f %16.3f %12s", threads, score, perThread, efficiency);
+			}
+		}
+	}
+
+	/**
+	 * Returns the thread counts to run: powers of two up to and including the passed maximum
+	 * @param maxThreads The maximum thread count
+	 * @return the thread counts
+	 */
+	public static List<Integer> threadCounts(final int maxThreads) {
+		final TreeSet<Integer> counts = new TreeSet<Integer>();
+		for(int t = 1; t < maxThreads; t *= 2) {
+			counts.add(t);
+		}
+		counts.add(Math.max(1, maxThreads));
+		return new ArrayList<Integer>(counts);
+	}
+
+	private static String key(final RunResult rr) {
+		final StringBuilder b = new StringBuilder(rr.getParams().getBenchmark());
+		for(Object k: rr.getParams().getParamsKeys()) {
+			b.append(" ").append(k).append("=").append(rr.getParams().getParam(k.toString()));
+		}
+		return b.toString();
+	}
+
+	public static void log(final Object fmt, final Object...args) {
+		System.out.println(String.format(fmt.toString(), args));
+	}
+
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+
+/**
+ * <p>Title: WireFormat</p>
+ * <p>Description: The encodings persons can be exchanged in, each with a {@link PersonCodec} over its own mapper
+ * so every format goes through the same pre-resolved reader and writer path.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.WireFormat</code></p>
+ */
+
+public enum WireFormat {
+	/** Plain JSON text */
+	JSON(new ObjectMapper()),
+	/** Smile, Jackson's binary JSON with back references to repeated names and short strings */
+	SMILE(new ObjectMapper(new SmileFactory())),
+	/** CBOR (RFC 7049) binary encoding */
+	CBOR(new ObjectMapper(new CBORFactory())),
+	/** XML text through the Jackson XML mapper */
+	XML(new XmlMapper());
+
+	private WireFormat(final ObjectMapper mapper) {
+		this.mapper = mapper;
+		codec = new PersonCodec(mapper);
+	}
+
+	/** The mapper for this format */
+	public final ObjectMapper mapper;
+	/** The codec for this format */
+	public final PersonCodec codec;
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.heliosapm.benchmarks.json;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Title: WorkCounters</p>
+ * <p>Description: Process wide counts of the input bytes and records processed by the benchmarks. The
+ * {@link JVMSummaryProfiler} reads them to normalize allocation per input byte and per record. This class has
+ * no management or JMH dependencies, so benchmarks can report to it whether or not the profiler is enabled.</p>
+ * <p>Company: Helios Development Group LLC</p>
+ * @author Whitehead (nwhitehead AT heliosdev DOT org)
+ * <p><code>com.heliosapm.benchmarks.json.WorkCounters</code></p>
+ */
+
+public class WorkCounters {
+	/** Input bytes reported by the benchmarks */
+	private static final AtomicLong INPUT_BYTES = new AtomicLong();
+	/** Records reported by the benchmarks */
+	private static final AtomicLong RECORDS = new AtomicLong();
+
+	private WorkCounters() {}
+
+	/**
+	 * Adds to the count of input bytes processed.
+	 * Benchmarks call this once per invocation with the bytes processed by all its operations.
+	 * @param bytes The number of input bytes processed
+	 */
+	public static void addInputBytes(final long bytes) {
+		INPUT_BYTES.addAndGet(bytes);
+	}
+
+	/**
+	 * Adds to the count of records (persons, messages) processed.
+	 * Benchmarks call this once per invocation with the records processed by all its operations.
+	 * @param records The number of records processed
+	 */
+	public static void addRecords(final long records) {
+		RECORDS.addAndGet(records);
+	}
+
+	/**
+	 * Returns the total input bytes reported so far
+	 * @return the input bytes
+	 */
+	public static long getInputBytes() {
+		return INPUT_BYTES.get();
+	}
+
+	/**
+	 * Returns the total records reported so far
+	 * @return the records
+	 */
+	public static long getRecords() {
+		return RECORDS.get();
+	}
+}
@@ -21,10 +21,11 @@ import org.junit.Test;
 import org.openjdk.jmh.annotations.Mode;
 import org.openjdk.jmh.results.format.ResultFormatType;
 import org.openjdk.jmh.runner.Runner;
-import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 import org.openjdk.jmh.runner.options.TimeValue;
 
+import com.heliosapm.benchmarks.json.InliningProfiler;
 import com.heliosapm.benchmarks.json.JVMSummaryProfiler;
 
 /**
@@ -45,16 +46,13 @@ public class TestBenchmark {
 	@Test public void 
 	launchBenchmark() throws Exception {
 
-		Options opt = new OptionsBuilder()
+		ChainedOptionsBuilder opt = new OptionsBuilder()
 		.include(System.getProperty("test.names", ".*"))
 		// Set the following options as needed
-		.mode (Mode.Throughput)
-		.timeUnit(TimeUnit.MILLISECONDS)
 		.warmupTime(TimeValue.seconds(5))
 		.warmupIterations(3)
 		.measurementTime(TimeValue.seconds(5))
 		.measurementIterations(10)
-		.threads(3)
 //		.syncIterations(false)
 		.forks(1)
 		.shouldFailOnError(true)
@@ -68,9 +66,19 @@ public class TestBenchmark {
 		
 		//.jvmArgs("-XX:+UnlockDiagnosticVMOptions", "-XX:+PrintInlining")
 		//.addProfiler(WinPerfAsmProfiler.class)
-		.build();
+		;
+		// -Dtest.inlining=true reports the inlining failures under the targets in -Dinlining.targets
+		if(Boolean.getBoolean("test.inlining")) opt.addProfiler(InliningProfiler.class);
+		// the benchmarks' own @BenchmarkMode, @OutputTimeUnit and thread counts apply unless overridden,
+		// e.g. -Dtest.mode=Throughput -Dtest.timeunit=MILLISECONDS -Dtest.threads=3
+		final String mode = System.getProperty("test.mode");
+		if(mode!=null) opt.mode(Mode.valueOf(mode.trim()));
+		final String timeUnit = System.getProperty("test.timeunit");
+		if(timeUnit!=null) opt.timeUnit(TimeUnit.valueOf(timeUnit.trim().toUpperCase()));
+		final Integer threads = Integer.getInteger("test.threads");
+		if(threads!=null) opt.threads(threads);
 
-		new Runner(opt).run();
+		new Runner(opt.build()).run();
 	}
 
 